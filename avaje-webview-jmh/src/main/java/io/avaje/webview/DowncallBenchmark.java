@@ -0,0 +1,173 @@
+package io.avaje.webview;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BOOLEAN;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import module java.base;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link FfmWebviewNative} (exact typed handles, critical linking for short calls) with
+ * the generic {@code MethodHandle.invoke} handles that it replaced, on one shared webview.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "--enable-native-access=ALL-UNNAMED")
+@State(Scope.Benchmark)
+public class DowncallBenchmark {
+
+  private static final String SCRIPT = "window.__bench__ = (window.__bench__ || 0) + 1;";
+
+  private FfmWebviewNative exact;
+  private LegacyNative legacy;
+  private MemorySegment webview;
+  private long legacySeq;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    exact = (FfmWebviewNative) new WebviewBuilder().nativeLibrary();
+    legacy = new LegacyNative();
+    webview = exact.webview_create(false, MemorySegment.NULL);
+    // webview_return expects a C string id, the reply is ignored by the page
+    legacySeq = Arena.global().allocateFrom("0").address();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    exact.webview_destroy(webview);
+  }
+
+  @Benchmark
+  public String version_exact() {
+    return exact.webview_version();
+  }
+
+  @Benchmark
+  public String version_legacy() {
+    return legacy.webview_version();
+  }
+
+  @Benchmark
+  public MemorySegment getWindow_exact() {
+    return exact.webview_get_window(webview);
+  }
+
+  @Benchmark
+  public MemorySegment getWindow_legacy() {
+    return legacy.webview_get_window(webview);
+  }
+
+  @Benchmark
+  public void setSize_exact() {
+    exact.webview_set_size(webview, 800, 600, 0);
+  }
+
+  @Benchmark
+  public void setSize_legacy() {
+    legacy.webview_set_size(webview, 800, 600, 0);
+  }
+
+  @Benchmark
+  public void return_exact() {
+    exact.webview_return(webview, "0", false, "\"ok\"");
+  }
+
+  @Benchmark
+  public void return_legacy() {
+    legacy.webview_return(webview, legacySeq, false, "\"ok\"");
+  }
+
+  @Benchmark
+  public void eval_exact() {
+    exact.webview_eval(webview, SCRIPT);
+  }
+
+  @Benchmark
+  public void eval_legacy() {
+    legacy.webview_eval(webview, SCRIPT);
+  }
+
+  /** The downcall layer as it was: generic handles, {@code invoke} and no linker options. */
+  static final class LegacyNative {
+
+    private static final Linker LINKER = Linker.nativeLinker();
+    private static final SymbolLookup LIBRARY = SymbolLookup.loaderLookup();
+
+    private final MethodHandle webview_version =
+        downcallHandle("webview_version", FunctionDescriptor.of(ADDRESS));
+    private final MethodHandle webview_get_window =
+        downcallHandle("webview_get_window", FunctionDescriptor.of(ADDRESS, ADDRESS));
+    private final MethodHandle webview_set_size =
+        downcallHandle(
+            "webview_set_size", FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT));
+    private final MethodHandle webview_eval =
+        downcallHandle("webview_eval", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+    private final MethodHandle webview_return =
+        downcallHandle(
+            "webview_return", FunctionDescriptor.ofVoid(ADDRESS, JAVA_LONG, JAVA_BOOLEAN, ADDRESS));
+
+    String webview_version() {
+      try {
+        MemorySegment result = (MemorySegment) webview_version.invoke();
+        return result.reinterpret(Integer.MAX_VALUE).getString(12);
+      } catch (Throwable e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    MemorySegment webview_get_window(MemorySegment webview) {
+      try {
+        return (MemorySegment) webview_get_window.invoke(webview);
+      } catch (Throwable e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    void webview_set_size(MemorySegment webview, int width, int height, int hint) {
+      try {
+        webview_set_size.invoke(webview, width, height, hint);
+      } catch (Throwable e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    void webview_eval(MemorySegment webview, String js) {
+      try (var arena = Arena.ofConfined()) {
+        webview_eval.invoke(webview, arena.allocateFrom(js));
+      } catch (Throwable e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    void webview_return(MemorySegment webview, long seq, boolean isError, String result) {
+      try (var arena = Arena.ofConfined()) {
+        webview_return.invoke(webview, seq, isError, arena.allocateFrom(result));
+      } catch (Throwable e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private static MethodHandle downcallHandle(String name, FunctionDescriptor descriptor) {
+      return LIBRARY
+          .find(name)
+          .map(addr -> LINKER.downcallHandle(addr, descriptor))
+          .orElseThrow(() -> new UnsatisfiedLinkError("Unable to find symbol: " + name));
+    }
+  }
+}
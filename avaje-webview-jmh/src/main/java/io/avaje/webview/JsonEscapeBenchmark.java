@@ -0,0 +1,130 @@
+package io.avaje.webview;
+
+import module java.base;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link WebviewUtil#jsonEscape(String)} and {@link WebviewUtil#forceSafeChars(String)}
+ * with the char by char escaping that they replaced, for ASCII, CJK and emoji heavy payloads.
+ *
+ * <p>Run with {@code -prof gc} to compare the allocation per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonEscapeBenchmark {
+
+  /** A bind request or result, about 1 KB of JSON. */
+  @Param({"ascii", "cjk", "emoji"})
+  public String payload;
+
+  private String json;
+  private String script;
+
+  @Setup
+  public void setup() {
+    String text =
+        switch (payload) {
+          case "ascii" -> "Quarterly report, revenue up 4.2% on the prior quarter";
+          case "cjk" -> "四半期報告書、売上高は前四半期比4.2%増加しました";
+          default -> "Shipped 🚀 build is green ✅ tests 🧪 all passing 🎉 thanks 🙏";
+        };
+    var rows = new StringJoiner(",", "[", "]");
+    for (int i = 0; rows.length() < 1024; i++) {
+      rows.add("{\"id\":" + i + ",\"title\":\"" + text + "\",\"done\":" + (i % 2 == 0) + "}");
+    }
+    json = rows.toString();
+    script = "render(" + json + ");\nconsole.log('done');";
+  }
+
+  /** Bind results and requests, nothing to escape for ASCII. */
+  @Benchmark
+  public String forceSafeChars() {
+    return WebviewUtil.forceSafeChars(json);
+  }
+
+  /** With {@code Builder.utf8(true)}, non-ASCII chars pass through. */
+  @Benchmark
+  public String forceSafeChars_utf8() {
+    return WebviewUtil.forceSafeChars(json, true);
+  }
+
+  @Benchmark
+  public String forceSafeChars_legacy() {
+    return Legacy.forceSafeChars(json);
+  }
+
+  /** Scripts quoted for eval and setInitScript, quotes and newlines to escape. */
+  @Benchmark
+  public String jsonEscape() {
+    return WebviewUtil.jsonEscape(script);
+  }
+
+  @Benchmark
+  public String jsonEscape_utf8() {
+    return WebviewUtil.jsonEscape(script, true);
+  }
+
+  @Benchmark
+  public String jsonEscape_legacy() {
+    return Legacy.jsonEscape(script);
+  }
+
+  /** The escaping as it was: toCharArray, a default sized builder and String.format. */
+  static final class Legacy {
+
+    static String jsonEscape(String input) {
+      char[] chars = input.toCharArray();
+      StringBuilder output = new StringBuilder();
+      for (char ch : chars) {
+        switch (ch) {
+          case 0 -> output.append("\\u0000");
+          case '\n' -> output.append("\\n");
+          case '\t' -> output.append("\\t");
+          case '\r' -> output.append("\\r");
+          case '\\' -> output.append("\\\\");
+          case '"' -> output.append("\\\"");
+          case '\b' -> output.append("\\b");
+          case '\f' -> output.append("\\f");
+          default -> {
+            if (ch > 127) {
+              output.append("\\u").append(String.format("%04x", (int) ch));
+            } else {
+              output.append(ch);
+            }
+          }
+        }
+      }
+      return output.toString();
+    }
+
+    static String forceSafeChars(String input) {
+      char[] chars = input.toCharArray();
+      StringBuilder output = new StringBuilder();
+      for (char ch : chars) {
+        if (ch == 0) {
+          output.append("\\u0000");
+        } else if (ch > 127) {
+          output.append("\\u").append(String.format("%04x", (int) ch));
+        } else {
+          output.append(ch);
+        }
+      }
+      return output.toString();
+    }
+  }
+}
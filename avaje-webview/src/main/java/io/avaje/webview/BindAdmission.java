@@ -0,0 +1,227 @@
+package io.avaje.webview;
+
+import module java.base;
+
+import io.avaje.webview.BindOptions.Lane;
+import io.avaje.webview.BindOptions.Overflow;
+
+/**
+ * Admits the calls of an async binding according to its {@link BindOptions}.
+ *
+ * <ul>
+ *   <li>Up to {@link BindOptions#maxInFlight()} calls run at once, a call counts until the future
+ *       of its handler completes. Further calls wait in a FIFO queue of {@link
+ *       BindOptions#queueDepth()}, calls over that are rejected or shed the oldest queued call.
+ *   <li>Background calls then also wait for a slot of the webview's {@link Lanes}.
+ *   <li>A queued call that the page aborts leaves the queue.
+ *   <li>Calls turned away are rejected with a fixed message, without capturing or logging a stack
+ *       trace, as a runaway page may make them at a high rate. They are counted in {@link
+ *       BindStats} and recorded as {@link BindQueueEvent}s.
+ * </ul>
+ */
+final class BindAdmission {
+
+  private final String binding;
+  private final BindOptions options;
+  private final Lanes lanes;
+  private final String rejectedJson;
+  private final String shedJson;
+  private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+  private final LongAdder started = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder shed = new LongAdder();
+  private final LongAdder queueNanos = new LongAdder();
+  private final LongAccumulator maxQueueNanos = new LongAccumulator(Math::max, 0);
+  private int inFlight;
+
+  BindAdmission(String binding, BindOptions options, Lanes lanes) {
+    this.binding = binding;
+    this.options = options;
+    this.lanes = lanes;
+    this.rejectedJson = errorJson(binding + " is full, call rejected");
+    this.shedJson = errorJson(binding + " shed a queued call for a newer one");
+  }
+
+  /**
+   * Submit a call, the task runs on the bind executor once admitted and must run the given
+   * completion when the call is complete.
+   */
+  void submit(RpcChannel.Reply reply, Consumer<Runnable> task) {
+    var pending = new Pending(reply, task, new BindQueueEvent(), System.nanoTime());
+    pending.event.begin();
+    Pending shedCall = null;
+    boolean start = false;
+    boolean queued = false;
+    synchronized (this) {
+      int max = options.maxInFlight();
+      if (max == 0 || inFlight < max) {
+        inFlight++;
+        start = true;
+      } else if (queue.size() < options.queueDepth()) {
+        queue.add(pending);
+        queued = true;
+      } else if (options.overflow() == Overflow.SHED_OLDEST && !queue.isEmpty()) {
+        shedCall = queue.poll();
+        queue.add(pending);
+        queued = true;
+      }
+    }
+    if (start) {
+      start(pending);
+    } else if (!queued) {
+      rejected.increment();
+      turnAway(pending, "rejected", rejectedJson);
+    }
+    if (shedCall != null) {
+      shed.increment();
+      turnAway(shedCall, "shed", shedJson);
+    }
+    if (queued) {
+      reply.onAbort(() -> remove(pending));
+    }
+  }
+
+  /** Return the statistics of the binding. */
+  BindStats stats() {
+    int running;
+    int waiting;
+    synchronized (this) {
+      running = inFlight;
+      waiting = queue.size();
+    }
+    return new BindStats(
+        running,
+        waiting,
+        started.sum(),
+        rejected.sum(),
+        shed.sum(),
+        Duration.ofNanos(queueNanos.sum()),
+        Duration.ofNanos(maxQueueNanos.get()));
+  }
+
+  private synchronized void remove(Pending pending) {
+    queue.remove(pending);
+  }
+
+  private void start(Pending pending) {
+    lanes.execute(
+        options.lane(),
+        laneDone -> {
+          commit(pending.event, "started");
+          long queueTime = System.nanoTime() - pending.queuedAt;
+          started.increment();
+          queueNanos.add(queueTime);
+          maxQueueNanos.accumulate(queueTime);
+          pending.task.accept(
+              () -> {
+                laneDone.run();
+                complete();
+              });
+        },
+        e -> {
+          pending.reply.error(e);
+          complete();
+        });
+  }
+
+  /** A call is complete, start the next queued call in its place. */
+  private void complete() {
+    Pending next;
+    synchronized (this) {
+      next = queue.poll();
+      if (next == null) {
+        inFlight--;
+      }
+    }
+    if (next != null) {
+      start(next);
+    }
+  }
+
+  private void turnAway(Pending pending, String outcome, String json) {
+    commit(pending.event, outcome);
+    pending.reply.rejected(json);
+  }
+
+  private static String errorJson(String message) {
+    String error = RejectedExecutionException.class.getName() + ": " + message;
+    return '"' + WebviewUtil.jsonEscape(error) + '"';
+  }
+
+  private void commit(BindQueueEvent event, String outcome) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.binding = binding;
+      event.lane = options.lane().name();
+      event.outcome = outcome;
+      event.commit();
+    }
+  }
+
+  private record Pending(
+      RpcChannel.Reply reply, Consumer<Runnable> task, BindQueueEvent event, long queuedAt) {}
+
+  /**
+   * The lanes of a webview's bind executor. Interactive calls run at once, background calls run
+   * up to a limit and otherwise wait in FIFO order.
+   */
+  static final class Lanes {
+
+    private static final Runnable NONE = () -> {};
+
+    private final Executor executor;
+    private final int background;
+    private final ArrayDeque<Consumer<Runnable>> waiting = new ArrayDeque<>();
+    private int running;
+
+    /**
+     * @param background the maximum background calls that run at once
+     */
+    Lanes(Executor executor, int background) {
+      this.executor = executor;
+      this.background = background;
+    }
+
+    /**
+     * Run the task on the executor, the task receives the completion to run once the call is
+     * complete.
+     */
+    void execute(Lane lane, Consumer<Runnable> task, Consumer<RejectedExecutionException> failed) {
+      if (lane == Lane.INTERACTIVE) {
+        run(task, NONE, failed);
+        return;
+      }
+      synchronized (this) {
+        if (running >= background) {
+          waiting.add(laneDone -> run(task, laneDone, failed));
+          return;
+        }
+        running++;
+      }
+      run(task, this::release, failed);
+    }
+
+    private void run(
+        Consumer<Runnable> task, Runnable laneDone, Consumer<RejectedExecutionException> failed) {
+      try {
+        executor.execute(() -> task.accept(laneDone));
+      } catch (RejectedExecutionException e) {
+        laneDone.run();
+        failed.accept(e);
+      }
+    }
+
+    private void release() {
+      Consumer<Runnable> next;
+      synchronized (this) {
+        next = waiting.poll();
+        if (next == null) {
+          running--;
+        }
+      }
+      if (next != null) {
+        next.accept(this::release);
+      }
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package io.avaje.webview;
+
+import module java.base;
+import module org.jspecify;
+
+/**
+ * Options of a binding, the rate at which the page may call it, caching of its results in the
+ * page and admission control for the calls of an async binding, see {@link
+ * Webview#bindAsync(String, BindOptions, WebviewAsyncBindCallback)}.
+ *
+ * <pre>{@code
+ * // at most 2 polls in flight, 1 waiting, older polls make way for newer ones
+ * webview.bindAsync(
+ *     "poll",
+ *     BindOptions.background().maxInFlight(2).queueDepth(1).overflow(Overflow.SHED_OLDEST),
+ *     handler);
+ * }</pre>
+ *
+ * Options are immutable, each method returns a copy.
+ */
+public final class BindOptions {
+
+  /** What happens to a call when the binding has its maximum in flight and the queue is full. */
+  public enum Overflow {
+
+    /** Reject the new call. */
+    REJECT,
+
+    /** Reject the oldest queued call and queue the new one, the latest calls win. */
+    SHED_OLDEST
+  }
+
+  /** The priority of a binding's calls on the bind executor. */
+  public enum Lane {
+
+    /**
+     * Calls start as soon as the binding admits them, for handlers of user input such as clicks.
+     */
+    INTERACTIVE,
+
+    /**
+     * Calls share a webview-wide limit of concurrently running background calls, so background
+     * work such as polling or prefetch cannot crowd out interactive calls.
+     *
+     * @see Webview.Builder#backgroundConcurrency(int)
+     */
+    BACKGROUND
+  }
+
+  private static final BindOptions INTERACTIVE =
+      new BindOptions(0, 0, Overflow.REJECT, Lane.INTERACTIVE, null, null);
+  private static final BindOptions BACKGROUND =
+      new BindOptions(0, 0, Overflow.REJECT, Lane.BACKGROUND, null, null);
+
+  private final int maxInFlight;
+  private final int queueDepth;
+  private final Overflow overflow;
+  private final Lane lane;
+  private final @Nullable RatePolicy rate;
+  private final @Nullable Duration cacheTtl;
+
+  private BindOptions(
+      int maxInFlight,
+      int queueDepth,
+      Overflow overflow,
+      Lane lane,
+      @Nullable RatePolicy rate,
+      @Nullable Duration cacheTtl) {
+    if (maxInFlight < 0 || queueDepth < 0) {
+      throw new IllegalArgumentException("maxInFlight and queueDepth must not be negative");
+    }
+    this.maxInFlight = maxInFlight;
+    this.queueDepth = queueDepth;
+    this.overflow = overflow;
+    this.lane = lane;
+    this.rate = rate;
+    this.cacheTtl = cacheTtl;
+  }
+
+  /** Options of the interactive lane without limits, the options of a plain {@code bindAsync}. */
+  public static BindOptions interactive() {
+    return INTERACTIVE;
+  }
+
+  /** Options of the background lane without limits. */
+  public static BindOptions background() {
+    return BACKGROUND;
+  }
+
+  /**
+   * Limit the calls of the binding that run at once, further calls queue. Defaults to 0, meaning
+   * unlimited.
+   */
+  public BindOptions maxInFlight(int maxInFlight) {
+    return new BindOptions(maxInFlight, queueDepth, overflow, lane, rate, cacheTtl);
+  }
+
+  /**
+   * Limit the calls waiting for one in flight to complete. Defaults to 0, calls over the maximum
+   * in flight then overflow at once.
+   */
+  public BindOptions queueDepth(int queueDepth) {
+    return new BindOptions(maxInFlight, queueDepth, overflow, lane, rate, cacheTtl);
+  }
+
+  /** Set what happens to a call that does not fit. Defaults to {@link Overflow#REJECT}. */
+  public BindOptions overflow(Overflow overflow) {
+    return new BindOptions(maxInFlight, queueDepth, overflow, lane, rate, cacheTtl);
+  }
+
+  /**
+   * Limit the rate at which the page calls the function, calls over it are merged in the page.
+   * Applies to all kinds of binding. Defaults to none.
+   *
+   * <p>As merged calls share one call to Java, an {@code AbortSignal} passed to the function only
+   * rejects the Promise of its caller, the call itself is not aborted.
+   */
+  public BindOptions rate(RatePolicy rate) {
+    return new BindOptions(maxInFlight, queueDepth, overflow, lane, rate, cacheTtl);
+  }
+
+  /**
+   * Cache the results of the function in the page, keyed by its arguments, for the time to live.
+   * Calls with the same arguments as one in flight share its result, with a time to live of zero
+   * only that applies. Failed calls are not cached. Applies to all kinds of binding except
+   * streams. Defaults to no caching.
+   *
+   * <p>As callers share results, an {@code AbortSignal} passed to the function only rejects the
+   * Promise of its caller, the call itself is not aborted and its result is still cached.
+   *
+   * @see Webview#invalidate(String)
+   * @see Webview#invalidate(String, String)
+   */
+  public BindOptions cache(Duration ttl) {
+    if (ttl.isNegative()) {
+      throw new IllegalArgumentException("ttl must not be negative");
+    }
+    return new BindOptions(maxInFlight, queueDepth, overflow, lane, rate, ttl);
+  }
+
+  /** Return the maximum calls in flight, 0 for unlimited. */
+  public int maxInFlight() {
+    return maxInFlight;
+  }
+
+  /** Return the maximum calls queued. */
+  public int queueDepth() {
+    return queueDepth;
+  }
+
+  /** Return what happens to a call that does not fit. */
+  public Overflow overflow() {
+    return overflow;
+  }
+
+  /** Return the lane of the calls. */
+  public Lane lane() {
+    return lane;
+  }
+
+  /** Return the rate policy, or null if the page may call the function at any rate. */
+  public @Nullable RatePolicy rate() {
+    return rate;
+  }
+
+  /** Return the time to live of cached results, or null if results are not cached. */
+  public @Nullable Duration cacheTtl() {
+    return cacheTtl;
+  }
+
+  /** Return the options of the function's stub, or an empty string if it has none. */
+  String stubJson() {
+    if (rate == null && cacheTtl == null) {
+      return "";
+    }
+    var json = new StringJoiner(",", "{", "}");
+    if (rate != null) {
+      json.add("\"rate\":" + rate.toJson());
+    }
+    if (cacheTtl != null) {
+      json.add("\"ttl\":" + cacheTtl.toMillis());
+    }
+    return json.toString();
+  }
+
+  /** Return true if calls are admitted without limits on the interactive lane. */
+  boolean unlimited() {
+    return maxInFlight == 0 && lane == Lane.INTERACTIVE;
+  }
+}
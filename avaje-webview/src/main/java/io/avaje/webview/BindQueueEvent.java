@@ -0,0 +1,28 @@
+package io.avaje.webview;
+
+import module java.base;
+import module jdk.jfr;
+
+/**
+ * JFR event for an async bind call that was admitted or turned away. The duration is the time
+ * from the call until its handler started, including any wait for the background lane.
+ *
+ * <p>There is no default threshold, a rejected call has no queue time and would never be recorded.
+ */
+@Name("io.avaje.webview.BindQueue")
+@Label("Webview Bind Queue")
+@Category({"Avaje", "Webview"})
+@Description("An async bind call waiting to start, the duration is its queue time")
+@StackTrace(false)
+final class BindQueueEvent extends Event {
+
+  @Label("Binding")
+  String binding;
+
+  @Label("Lane")
+  String lane;
+
+  @Label("Outcome")
+  @Description("started, rejected or shed")
+  String outcome;
+}
@@ -0,0 +1,23 @@
+package io.avaje.webview;
+
+import module java.base;
+
+/**
+ * Admission statistics of an async binding, see {@link Webview#bindStats(String)}.
+ *
+ * @param inFlight calls running now
+ * @param queued calls waiting now for the binding to admit them
+ * @param started calls started since the binding was bound
+ * @param rejected calls rejected as the binding was full
+ * @param shed queued calls rejected to make way for newer calls
+ * @param queueTime the total time started calls waited before they ran
+ * @param maxQueueTime the longest time a started call waited
+ */
+public record BindStats(
+    long inFlight,
+    long queued,
+    long started,
+    long rejected,
+    long shed,
+    Duration queueTime,
+    Duration maxQueueTime) {}
@@ -0,0 +1,201 @@
+package io.avaje.webview;
+
+import static java.lang.System.Logger.Level.ERROR;
+
+import module java.base;
+import module org.jspecify;
+
+/**
+ * The open streams of a webview's {@link WebviewStreamBindCallback stream bindings}.
+ *
+ * <ul>
+ *   <li>Each stream subscribes to the publisher with {@link #WINDOW} credits. Items are buffered
+ *       and pushed to the page by one {@code webview_eval} per UI tick.
+ *   <li>The page returns credits via {@value #CONTROL} as it consumes items, so at most a window
+ *       of items is in flight. Returning 0 credits cancels the stream.
+ *   <li>A new page reports {@code [0,0]} before it opens its first stream, cancelling the streams
+ *       of the page before it.
+ * </ul>
+ */
+final class BindStreams {
+
+  private static final System.Logger log = System.getLogger("io.avaje.webview");
+
+  /** The name of the function that the page calls with {@code (streamId, credits)}. */
+  static final String CONTROL = "__avaje_stream__";
+
+  /** The items requested up front, the runtime returns credits in halves of this. */
+  static final int WINDOW = 16;
+
+  private final DispatchQueue dispatcher;
+  private final Consumer<String> eval;
+  private final boolean utf8;
+  private final Map<Long, Stream> streams = new ConcurrentHashMap<>();
+  private final AtomicLong ids = new AtomicLong();
+  private volatile boolean closed;
+
+  /**
+   * @param eval evaluates a script, called on the UI thread
+   * @param utf8 true to pass non-ASCII chars of the items through, false to escape them
+   */
+  BindStreams(DispatchQueue dispatcher, Consumer<String> eval, boolean utf8) {
+    this.dispatcher = dispatcher;
+    this.eval = eval;
+    this.utf8 = utf8;
+  }
+
+  /** Subscribe to the publisher, returning the id of the stream for the page. */
+  long open(Flow.Publisher<String> publisher) {
+    var stream = new Stream(ids.incrementAndGet());
+    streams.put(stream.id, stream);
+    publisher.subscribe(stream);
+    return stream.id;
+  }
+
+  /** Handle {@code [streamId,credits]} from the page. */
+  void control(String jsonArgs) {
+    int comma = jsonArgs.indexOf(',');
+    if (comma < 0 || !jsonArgs.startsWith("[") || !jsonArgs.endsWith("]")) {
+      throw new IllegalArgumentException("Malformed stream control " + jsonArgs);
+    }
+    long id = Long.parseLong(jsonArgs.substring(1, comma).strip());
+    long credits = Long.parseLong(jsonArgs.substring(comma + 1, jsonArgs.length() - 1).strip());
+    if (id == 0) {
+      // a new page, nothing reads the streams of the page before it
+      cancelAll();
+      return;
+    }
+    Stream stream = streams.get(id);
+    if (stream == null) {
+      return;
+    }
+    if (credits > 0) {
+      stream.request(credits);
+    } else {
+      stream.cancel();
+    }
+  }
+
+  /** Return the number of open streams. */
+  int size() {
+    return streams.size();
+  }
+
+  /** Cancel all streams, the webview is closing. */
+  void close() {
+    closed = true;
+    cancelAll();
+  }
+
+  private void cancelAll() {
+    for (Stream stream : streams.values()) {
+      stream.cancel();
+    }
+  }
+
+  private static String errorJson(Throwable e) {
+    String stacktrace = WebviewUtil.getExceptionStack(e);
+    log.log(ERROR, stacktrace);
+    return '"' + WebviewUtil.jsonEscape(stacktrace) + '"';
+  }
+
+  /** Subscribes to the publisher of one call and pushes its items to the page. */
+  private final class Stream implements Flow.Subscriber<String> {
+
+    private final long id;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final List<String> items = new ArrayList<>();
+    private volatile Flow.@Nullable Subscription subscription;
+    private volatile boolean cancelled;
+    private boolean complete;
+    private @Nullable String error;
+
+    Stream(long id) {
+      this.id = id;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      if (cancelled || closed) {
+        subscription.cancel();
+      } else {
+        subscription.request(WINDOW);
+      }
+    }
+
+    @Override
+    public void onNext(@Nullable String item) {
+      synchronized (this) {
+        items.add(item == null ? "null" : WebviewUtil.forceSafeChars(item, utf8));
+      }
+      schedule();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      synchronized (this) {
+        error = errorJson(throwable);
+      }
+      schedule();
+    }
+
+    @Override
+    public void onComplete() {
+      synchronized (this) {
+        complete = true;
+      }
+      schedule();
+    }
+
+    void request(long credits) {
+      var current = subscription;
+      if (current != null) {
+        current.request(credits);
+      }
+    }
+
+    void cancel() {
+      cancelled = true;
+      streams.remove(id);
+      var current = subscription;
+      if (current != null) {
+        current.cancel();
+      }
+    }
+
+    private void schedule() {
+      if (!cancelled && scheduled.compareAndSet(false, true)) {
+        dispatcher.post(this::flush);
+      }
+    }
+
+    /** Runs on the UI thread, pushes the items buffered since the last flush. */
+    private void flush() {
+      scheduled.set(false);
+      var script = new StringBuilder(64);
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        script.append("window.__avaje__.push(").append(id).append(",[");
+        for (int i = 0; i < items.size(); i++) {
+          script.append(i == 0 ? "" : ",").append(items.get(i));
+        }
+        script.append(']');
+        items.clear();
+        if (error != null) {
+          script.append(",true,").append(error);
+        } else if (complete) {
+          script.append(",true");
+        }
+        script.append(");");
+        if (error != null || complete) {
+          cancelled = true;
+          streams.remove(id);
+        }
+      }
+      eval.accept(script.toString());
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package io.avaje.webview;
+
+import module java.base;
+import module jdk.jfr;
+
+/**
+ * JFR event for a call from JavaScript to a bound function. The duration covers decoding the
+ * request, running the handler and returning the result. An async call is committed when its
+ * result is returned, on the thread that completes it, so it includes any queue time.
+ */
+@Name("io.avaje.webview.BindUpcall")
+@Label("Webview Bind Upcall")
+@Category({"Avaje", "Webview"})
+@Description("A call from JavaScript to a function bound in Java")
+@Threshold("1 ms")
+@StackTrace(false)
+final class BindUpcallEvent extends Event {
+
+  @Label("Binding")
+  String binding;
+
+  @Label("Request Size")
+  @DataAmount
+  long requestBytes;
+
+  @Label("Result Size")
+  @DataAmount
+  long resultBytes;
+
+  @Label("Error")
+  @Description("The handler failed and an error was returned to JavaScript")
+  boolean error;
+
+  /** Record the result, its size is only measured when recording. */
+  void result(String result) {
+    if (isEnabled()) {
+      resultBytes = NativeStrings.utf8Length(result);
+    }
+  }
+
+  void result(Utf8Text result) {
+    resultBytes = result.byteSize();
+  }
+
+  void failed() {
+    error = true;
+  }
+
+  /** Commit if recording and over the threshold. */
+  void commit(String binding, long requestBytes) {
+    end();
+    if (shouldCommit()) {
+      this.binding = binding;
+      this.requestBytes = requestBytes;
+      commit();
+    }
+  }
+}
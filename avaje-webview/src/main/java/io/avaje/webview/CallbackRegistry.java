@@ -0,0 +1,58 @@
+package io.avaje.webview;
+
+import module java.base;
+import module org.jspecify;
+
+/**
+ * Java callbacks looked up by the {@code arg} value that native code passes back to a shared
+ * upcall stub.
+ *
+ * <p>Lookups are lock-free (a volatile array read), registration and removal are synchronized as
+ * they are rare. Removed ids are reused in FIFO order and id 0 is never used, so an unset {@code
+ * arg} never matches a callback.
+ */
+final class CallbackRegistry<T> {
+
+  private volatile AtomicReferenceArray<T> slots = new AtomicReferenceArray<>(16);
+  private final ArrayDeque<Integer> free = new ArrayDeque<>();
+  private int next = 1;
+  private int size;
+
+  /** Register the callback returning the id to pass as the native {@code arg}. */
+  synchronized long register(T callback) {
+    Integer reuse = free.poll();
+    int id = reuse != null ? reuse : next++;
+    var current = slots;
+    if (id >= current.length()) {
+      var grown = new AtomicReferenceArray<T>(current.length() * 2);
+      for (int i = 0; i < current.length(); i++) {
+        grown.set(i, current.get(i));
+      }
+      slots = current = grown;
+    }
+    current.set(id, callback);
+    size++;
+    return id;
+  }
+
+  /** Remove the callback, late calls with this id then find no callback. */
+  synchronized void remove(long id) {
+    var current = slots;
+    if (id > 0 && id < current.length() && current.getAndSet((int) id, null) != null) {
+      free.add((int) id);
+      size--;
+    }
+  }
+
+  /** Return the callback for the id or null when not registered. */
+  @Nullable
+  T get(long id) {
+    var current = slots;
+    return id > 0 && id < current.length() ? current.get((int) id) : null;
+  }
+
+  /** Return the number of registered callbacks. */
+  synchronized int size() {
+    return size;
+  }
+}
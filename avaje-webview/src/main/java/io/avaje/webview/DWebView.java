@@ -27,11 +27,16 @@ import static io.avaje.webview.platform.Platform.OS_FAMILY;
 import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.ERROR;
 import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
 import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import module java.base;
 import module org.jspecify;
 
+import io.avaje.webview.internal.PageStubs;
+import io.avaje.webview.spi.WebviewNative;
+
 /**
  * Webview browser window.
  *
@@ -66,17 +71,59 @@ final class DWebView implements Webview {
   private static final int WV_HINT_MAX = 2;
   private static final int WV_HINT_FIXED = 3;
   private static final FunctionDescriptor BIND_DESCRIPTOR =
-      FunctionDescriptor.ofVoid(JAVA_LONG, ADDRESS);
-  private static final FunctionDescriptor DISPATCH_DESCRIPTOR =
       FunctionDescriptor.ofVoid(
-          ADDRESS, // webview pointer
-          JAVA_LONG // arg
+          ADDRESS, // id, freed when the upcall returns
+          ADDRESS, // req
+          JAVA_LONG // arg, the id of the webview in BINDINGS
           );
 
+  /** Webviews with a bound RPC entry, keyed by the arg passed to the shared bind stub. */
+  private static final CallbackRegistry<DWebView> BINDINGS = new CallbackRegistry<>();
+
+  private static final String ABORTED = "\"aborted\"";
+  private static final Runnable NO_OP = () -> {};
+  private static final Duration EVAL_TIMEOUT = Duration.ofSeconds(30);
+  private static final Set<String> RESERVED =
+      Set.of(
+          RpcChannel.ENTRY,
+          BindStreams.CONTROL,
+          InFlightCalls.CANCEL,
+          EvalResults.RESULT,
+          Topics.CONTROL);
+
+  /** The default executor of async bind handlers, a virtual thread per call. */
+  private static final Executor VIRTUAL_THREADS =
+      Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("webview-bind-", 0).factory());
+
   private final MemorySegment webview;
   private final WebviewNative wbNative;
 
-  private final Arena arena = Arena.ofAuto();
+  private final DispatchQueue dispatcher;
+  private final ResourceTracker resources;
+  private final Executor bindExecutor;
+  private final boolean windows;
+  private final boolean macos;
+  private final boolean utf8;
+  private final RpcChannel rpc;
+  private final BindStreams streams;
+  private final InFlightCalls calls = new InFlightCalls();
+  private final EvalResults evals = new EvalResults();
+  private final @Nullable EvalBatch evalBatch;
+  private final Topics topics;
+  private final ScriptRegistry scripts = new ScriptRegistry();
+  private final AtomicBoolean topicsInstalled = new AtomicBoolean();
+  private final AtomicBoolean evalsInstalled = new AtomicBoolean();
+  private final AtomicBoolean cancelInstalled = new AtomicBoolean();
+  private final AtomicBoolean streamsInstalled = new AtomicBoolean();
+  private final BindAdmission.Lanes lanes;
+  private final Map<String, BindAdmission> admissions = new ConcurrentHashMap<>();
+  private final AtomicBoolean installScheduled = new AtomicBoolean();
+  private @Nullable Binding entry;
+  private volatile boolean running;
+  private volatile boolean destroyed;
+  /** Held to destroy the webview and to return to it, results may arrive from any thread. */
+  private final Object destroyLock = new Object();
+  private final AtomicBoolean released = new AtomicBoolean();
 
   public static WebviewBuilder builder() {
     return new WebviewBuilder();
@@ -87,16 +134,42 @@ final class DWebView implements Webview {
       boolean debug,
       @Nullable MemorySegment windowPointer,
       int width,
-      int height) {
+      int height,
+      int dispatchCapacity,
+      DispatchOverflow dispatchOverflow,
+      boolean leakDetection,
+      @Nullable Executor bindExecutor,
+      int backgroundConcurrency,
+      boolean batchCalls,
+      int evalBatchSize,
+      Duration evalLatency,
+      boolean utf8) {
 
-    checkEnvironment();
     wbNative = webNative;
+    this.utf8 = utf8;
+    rpc = new RpcChannel(batchCalls);
+    this.bindExecutor = bindExecutor == null ? VIRTUAL_THREADS : bindExecutor;
+    lanes = new BindAdmission.Lanes(this.bindExecutor, backgroundConcurrency);
+    // platform window operations only apply to a backend that creates a platform window
+    windows = webNative.hasNativeWindow() && WINDOWS == OS_FAMILY;
+    macos = webNative.hasNativeWindow() && OS_DISTRIBUTION == MACOS;
+    checkEnvironment();
     webview =
         wbNative.webview_create(
             debug, windowPointer == null ? MemorySegment.NULL : windowPointer);
+    resources = new ResourceTracker(this, leakDetection);
+    dispatcher = new DispatchQueue(wbNative, webview, dispatchCapacity, dispatchOverflow);
+    evalBatch =
+        evalBatchSize > 0
+            ? new EvalBatch(dispatcher, wbNative, webview, evalBatchSize, evalLatency, utf8)
+            : null;
+    streams = new BindStreams(dispatcher, this::evalOnUiThread, utf8);
+    topics = new Topics(dispatcher, this::evalOnUiThread, utf8);
+    resources.allocated(0);
+    PageStubs.attach(webNative, new Stubs(rpc));
 
     this.setSize(width, height);
-    if (OS_DISTRIBUTION == MACOS) {
+    if (macos) {
       MacOSHelper.createMenus();
     }
   }
@@ -108,18 +181,33 @@ final class DWebView implements Webview {
 
   @Override
   public void setHTML(@Nullable String html) {
+    flushEvals();
+    wbNative.webview_set_html(webview, html);
+  }
+
+  @Override
+  public void setHTML(@NonNull Utf8Text html) {
+    flushEvals();
     wbNative.webview_set_html(webview, html);
   }
 
   @Override
   public void loadURL(@Nullable String url) {
+    flushEvals();
     wbNative.webview_navigate(webview, url == null ? "about:blank" : url);
   }
 
+  /** Evaluate the coalesced evals still pending, on the page they were made for. */
+  private void flushEvals() {
+    if (evalBatch != null) {
+      evalBatch.flush();
+    }
+  }
+
   @Override
   public void setTitle(@NonNull String title) {
     wbNative.webview_set_title(webview, title);
-    if (OS_DISTRIBUTION == MACOS) {
+    if (macos) {
       MacOSHelper.setApplicationName(title);
     }
   }
@@ -169,137 +257,630 @@ final class DWebView implements Webview {
             console.error('[Webview]', 'An error occurred whilst evaluating init script:', %s, e);
             }
             })();""",
-              allowNestedAccess, script, '"' + WebviewUtil.jsonEscape(script) + '"');
+              allowNestedAccess, script, '"' + WebviewUtil.jsonEscape(script, utf8) + '"');
 
       wbNative.webview_init(webview, script1);
   }
 
   @Override
   public void eval(@NonNull String script) {
-    wbNative.webview_eval(
-        webview,
-        String.format(
-            """
-      try {
-      %s
-      } catch (e) {
-      console.error('[Webview]', 'An error occurred whilst evaluating script:', %s, e);
-      }""",
-            script, '"' + WebviewUtil.jsonEscape(script) + '"'));
+    if (evalBatch != null) {
+      evalBatch.add(script);
+      return;
+    }
+    var wrapped = new StringBuilder(script.length() * 2 + 112).append("try {\n").append(script);
+    wrapped.append("\n} catch (e) {\n");
+    wrapped.append("console.error('[Webview]', 'An error occurred whilst evaluating script:', \"");
+    WebviewUtil.jsonEscape(script, utf8, wrapped).append("\", e);\n}");
+    wbNative.webview_eval(webview, wrapped.toString());
+  }
+
+  @Override
+  public void eval(@NonNull Utf8Text script) {
+    if (evalBatch != null) {
+      evalBatch.add(script);
+      return;
+    }
+    wbNative.webview_eval(webview, script);
+  }
+
+  @Override
+  public CompletableFuture<String> evalForResult(@NonNull String script) {
+    return evalForResult(script, EVAL_TIMEOUT);
+  }
+
+  @Override
+  public CompletableFuture<String> evalForResult(
+      @NonNull String script, @NonNull Duration timeout) {
+    installEvalResults();
+    var future = new CompletableFuture<String>();
+    String evalScript = EvalResults.script(evals.open(future, timeout), script, utf8);
+    // after the install of the result function, which is posted ahead of this
+    evalInOrder(evalScript);
+    return future;
+  }
+
+  /**
+   * Apply the JSON array of commands of a DOM batch, completing with the JSON array of its reads.
+   * The commands are passed to the runtime's dom function as is, not via an eval.
+   */
+  CompletableFuture<String> applyDom(String commands) {
+    installEvalResults();
+    var future = new CompletableFuture<String>();
+    evalInOrder(EvalResults.dom(evals.open(future, EVAL_TIMEOUT), commands));
+    return future;
+  }
+
+  /** Install the function that evals and DOM batches report their results to, once. */
+  private void installEvalResults() {
+    if (evalsInstalled.compareAndSet(false, true)) {
+      register(
+          EvalResults.RESULT,
+          (args, reply) -> {
+            try {
+              evals.complete(decode(args));
+              reply.result(Utf8Text.NULL);
+            } catch (Throwable e) {
+              reply.error(e);
+            }
+          },
+          false,
+          BindOptions.interactive());
+    }
+  }
+
+  /**
+   * Evaluate a script as is on the UI thread. With coalesced evals it queues behind the pending
+   * evals, so it does not overtake an eval made before it.
+   */
+  private void evalInOrder(String script) {
+    Runnable task = () -> wbNative.webview_eval(webview, script);
+    if (evalBatch != null) {
+      evalBatch.add(task);
+    } else {
+      dispatcher.post(task);
+    }
+  }
+
+  /** Evaluate a script as is, called on the UI thread by the stream and topic flushes. */
+  private void evalOnUiThread(String script) {
+    if (evalBatch != null) {
+      evalBatch.add((Runnable) () -> wbNative.webview_eval(webview, script));
+    } else {
+      wbNative.webview_eval(webview, script);
+    }
   }
 
   @Override
   public void bind(@NonNull String name, @NonNull WebviewBindCallback handler) {
-    bindCallback(name, handler);
+    bind(name, BindOptions.interactive(), handler);
   }
 
-  private void bindCallback(String name, WebviewBindCallback handler) {
-    BindCallback callback =
-        (seq, req) -> {
+  @Override
+  public void bind(
+      @NonNull String name, @NonNull BindOptions options, @NonNull WebviewBindCallback handler) {
+    if (!options.unlimited()) {
+      throw new IllegalArgumentException(
+          "Synchronous bindings run one at a time on the UI thread, only a rate applies");
+    }
+    bindCallback(
+        name,
+        (args, reply) -> {
           try {
-            req = WebviewUtil.forceSafeChars(req);
+            String jsonArgs = WebviewUtil.forceSafeChars(decode(args), utf8);
 
-            String result = handler.apply(req);
+            String result = handler.apply(jsonArgs);
             if (result == null) {
               result = "null";
             }
 
-            wbNative.webview_return(webview, seq, false, WebviewUtil.forceSafeChars(result));
+            result = WebviewUtil.forceSafeChars(result, utf8);
+            reply.result(result);
           } catch (Throwable e) {
-            String stacktrace = WebviewUtil.getExceptionStack(e);
-            log.log(ERROR, stacktrace);
+            reply.error(e);
+          }
+        },
+        false,
+        options);
+  }
 
-            String exceptionJson = '"' + WebviewUtil.jsonEscape(stacktrace) + '"';
+  @Override
+  public void bindEncoded(@NonNull String name, @NonNull WebviewEncodedBindCallback handler) {
+    bindCallback(
+        name,
+        (args, reply) -> {
+          try {
+            Utf8Text result = handler.apply(WebviewUtil.forceSafeChars(decode(args), utf8));
+            result = result == null ? Utf8Text.NULL : result;
+            reply.result(result);
+          } catch (Throwable e) {
+            reply.error(e);
+          }
+        });
+  }
 
-            wbNative.webview_return(webview, seq, true, exceptionJson);
+  @Override
+  public void bindRaw(@NonNull String name, @NonNull WebviewRawBindCallback handler) {
+    bindCallback(
+        name,
+        (args, reply) -> {
+          // the scope bounds the request to this call, the native side frees it on return
+          try (var scope = Arena.ofConfined()) {
+            var request = new WebviewRequest(args.reinterpret(scope, null));
+            Utf8Text result = handler.apply(request);
+            result = result == null ? Utf8Text.NULL : result;
+            reply.result(result);
+          } catch (Throwable e) {
+            reply.error(e);
           }
-        };
+        });
+  }
 
-    // Create upcall stub for the callback
-    MemorySegment callbackStub =
-        Linker.nativeLinker()
-            .upcallStub(createBindCallbackHandle(callback), BIND_DESCRIPTOR, arena);
+  @Override
+  public void bindAsync(@NonNull String name, @NonNull WebviewAsyncBindCallback handler) {
+    bindAsync(name, BindOptions.interactive(), handler);
+  }
 
-    wbNative.webview_bind(webview, name, callbackStub, 0);
+  @Override
+  public void bindAsync(
+      @NonNull String name,
+      @NonNull BindOptions options,
+      @NonNull WebviewAsyncBindCallback handler) {
+    var admission = options.unlimited() ? null : new BindAdmission(name, options, lanes);
+    bindCallback(
+        name,
+        (args, reply) -> {
+          // copy the bytes as the native side frees the request when the upcall returns
+          byte[] request = args.toArray(JAVA_BYTE);
+          var call = new AsyncCall();
+          reply.onAbort(call::abort);
+          if (admission != null) {
+            admission.submit(reply, done -> applyAsync(request, reply, handler, call, done));
+            return;
+          }
+          try {
+            bindExecutor.execute(() -> applyAsync(request, reply, handler, call, NO_OP));
+          } catch (RejectedExecutionException e) {
+            reply.error(e);
+          }
+        },
+        false,
+        options);
+    if (admission != null) {
+      admissions.put(name, admission);
+    }
+    if (cancelInstalled.compareAndSet(false, true)) {
+      register(
+          InFlightCalls.CANCEL,
+          (args, reply) -> {
+            try {
+              calls.cancel(decode(args));
+              reply.result(Utf8Text.NULL);
+            } catch (Throwable e) {
+              reply.error(e);
+            }
+          },
+          false,
+          BindOptions.interactive());
+    }
   }
 
-  @SuppressWarnings("unused")
-  private static void bindCallbackInvoke(BindCallback callback, long seq, MemorySegment req) {
-    callback.callback(seq, req.reinterpret(Long.MAX_VALUE).getString(0));
+  @Override
+  public void bindStream(@NonNull String name, @NonNull WebviewStreamBindCallback handler) {
+    bindCallback(
+        name,
+        (args, reply) -> {
+          try {
+            var publisher = handler.apply(WebviewUtil.forceSafeChars(decode(args), utf8));
+            String id = Long.toString(streams.open(Objects.requireNonNull(publisher, "publisher")));
+            reply.result(id);
+          } catch (Throwable e) {
+            reply.error(e);
+          }
+        },
+        true,
+        BindOptions.interactive());
+    if (streamsInstalled.compareAndSet(false, true)) {
+      register(
+          BindStreams.CONTROL,
+          (args, reply) -> {
+            try {
+              streams.control(decode(args));
+              reply.result(Utf8Text.NULL);
+            } catch (Throwable e) {
+              reply.error(e);
+            }
+          },
+          false,
+          BindOptions.interactive());
+    }
+  }
+
+  /** Runs on the bind executor, the result is returned when the handler's future completes. */
+  private void applyAsync(
+      byte[] request,
+      RpcChannel.Reply reply,
+      WebviewAsyncBindCallback handler,
+      AsyncCall call,
+      Runnable done) {
+    if (!call.start()) {
+      // aborted before it started
+      done.run();
+      return;
+    }
+    CompletableFuture<String> future;
+    try {
+      future = handler.apply(WebviewUtil.forceSafeChars(new String(request, UTF_8), utf8));
+    } catch (Throwable e) {
+      call.applied(null);
+      returnAsync(reply, null, e);
+      done.run();
+      return;
+    }
+    call.applied(future);
+    if (future == null) {
+      returnAsync(reply, null, null);
+      done.run();
+    } else {
+      future.whenComplete(
+          (result, e) -> {
+            returnAsync(reply, result, e);
+            done.run();
+          });
+    }
+  }
+
+  /** Return the result of an async call, on the thread that completed it. */
+  private void returnAsync(
+      RpcChannel.Reply reply, @Nullable String result, @Nullable Throwable error) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      reply.error(error.getCause());
+    } else if (error != null) {
+      reply.error(error);
+    } else {
+      String json = result == null ? "null" : result;
+      reply.result(WebviewUtil.forceSafeChars(json, utf8));
+    }
+  }
+
+  private static String decode(MemorySegment args) {
+    return new String(args.toArray(JAVA_BYTE), UTF_8);
+  }
+
+  private void returnError(String seq, Throwable e) {
+    webviewReturn(seq, true, errorJson(e));
+  }
+
+  /** Return to the page, the result is dropped once the webview is destroyed. */
+  private void webviewReturn(String seq, boolean isError, String json) {
+    synchronized (destroyLock) {
+      if (destroyed) {
+        log.log(DEBUG, "Webview destroyed, dropping the result of call " + seq);
+      } else {
+        wbNative.webview_return(webview, seq, isError, json);
+      }
+    }
+  }
+
+  private void webviewReturn(String seq, boolean isError, Utf8Text json) {
+    synchronized (destroyLock) {
+      if (destroyed) {
+        log.log(DEBUG, "Webview destroyed, dropping the result of call " + seq);
+      } else {
+        wbNative.webview_return(webview, seq, isError, json);
+      }
+    }
+  }
+
+  private static String errorJson(Throwable e) {
+    String stacktrace = WebviewUtil.getExceptionStack(e);
+    log.log(ERROR, stacktrace);
+
+    return '"' + WebviewUtil.jsonEscape(stacktrace) + '"';
+  }
+
+  private void bindCallback(String name, RpcChannel.Handler handler) {
+    bindCallback(name, handler, false, BindOptions.interactive());
+  }
+
+  private void bindCallback(
+      String name, RpcChannel.Handler handler, boolean stream, BindOptions options) {
+    if (RESERVED.contains(name)) {
+      throw new IllegalArgumentException(name + " is reserved");
+    }
+    admissions.remove(name);
+    register(name, handler, stream, options);
+  }
+
+  private void register(
+      String name, RpcChannel.Handler handler, boolean stream, BindOptions options) {
+    synchronized (rpc) {
+      if (entry == null) {
+        bindEntry();
+      }
+    }
+    if (rpc.register(name, handler, stream, options)) {
+      installStubs();
+    }
   }
 
-  private static MethodHandle createBindCallbackHandle(BindCallback callback) {
+  /** Bind the native function that all stubs call. */
+  private void bindEntry() {
+    var bindingArena = Arena.ofShared();
+    var name = bindingArena.allocateFrom(RpcChannel.ENTRY);
+    var binding = new Binding(BINDINGS.register(this), bindingArena, name);
+    entry = binding;
+    resources.allocated(binding.name().byteSize());
+    wbNative.webview_bind(webview, binding.name(), BindStub.STUB, binding.id());
+  }
+
+  /**
+   * Install the stubs bound since the last install with one script. Before the loop runs this is
+   * left to run(), so all bindings made up front share a script, otherwise it is posted to the UI
+   * thread once per burst of bindings.
+   */
+  private void installStubs() {
+    if (running && installScheduled.compareAndSet(false, true)) {
+      dispatcher.post(
+          () -> {
+            installScheduled.set(false);
+            flushStubs();
+          });
+    }
+  }
+
+  private void flushStubs() {
+    String script = rpc.installScript();
+    if (script != null) {
+      wbNative.webview_init(webview, script);
+      wbNative.webview_eval(webview, script);
+    }
+  }
+
+  /** Upcall target of the shared bind stub, routes the call to the bound method. */
+  @SuppressWarnings("unused")
+  private static void bindCallbackInvoke(MemorySegment id, MemorySegment req, long arg) {
+    DWebView webview = BINDINGS.get(arg);
+    if (webview == null) {
+      log.log(ERROR, "No binding registered for id " + arg);
+      return;
+    }
     try {
-      return MethodHandles.insertArguments(
-          MethodHandles.lookup()
-              .findStatic(
-                  DWebView.class,
-                  "bindCallbackInvoke",
-                  MethodType.methodType(
-                      void.class, BindCallback.class, long.class, MemorySegment.class)),
-          0,
-          callback);
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to create callback handle", e);
+      // copied, the result of an async call is returned after the native id is freed
+      String seq = id.reinterpret(Long.MAX_VALUE).getString(0);
+      webview.rpcInvoke(seq, req.reinterpret(NativeStrings.strlen(req)));
+    } catch (Throwable e) {
+      // must not propagate out of an upcall
+      log.log(ERROR, "Error invoking binding " + arg, e);
+    }
+  }
+
+  private void rpcInvoke(String seq, MemorySegment request) {
+    if (RpcChannel.id(request) != RpcChannel.BATCH) {
+      invoke(request, new Returns(seq));
+      return;
+    }
+    List<MemorySegment> calls = RpcChannel.batch(RpcChannel.args(request));
+    if (calls == null) {
+      returnError(seq, new IllegalStateException("Malformed batch of calls"));
+      return;
+    }
+    // synchronous handlers run in turn on the UI thread, async ones in parallel on the executor
+    var batch = new BatchReturns(seq, calls.size());
+    for (int i = 0; i < calls.size(); i++) {
+      invoke(calls.get(i), batch.slot(i));
+    }
+  }
+
+  private void invoke(MemorySegment request, RpcChannel.Reply reply) {
+    int id = RpcChannel.id(request);
+    RpcChannel.Method method = id <= 0 ? null : rpc.method(id);
+    if (method == null) {
+      reply.error(new IllegalStateException("No function bound for call " + id));
+      return;
+    }
+    MemorySegment args = RpcChannel.args(request);
+    var event = new BindUpcallEvent();
+    if (event.isEnabled()) {
+      // committed when the call is settled, for an async call after the upcall has returned
+      event.begin();
+      reply = new RecordedReply(reply, event, method.name(), args.byteSize());
+    }
+    long callId = RpcChannel.callId(request);
+    if (callId > 0) {
+      reply = calls.open(callId, reply);
     }
+    method.handler().call(args, reply);
   }
 
   @Override
   public void unbind(@NonNull String name) {
-    wbNative.webview_unbind(webview, name);
+    rpc.unregister(name);
+    admissions.remove(name);
   }
 
   @Override
-  public void dispatch(@NonNull Runnable handler) {
-    // Create upcall stub for the dispatch callback
-    MemorySegment callbackStub =
-        Linker.nativeLinker()
-            .upcallStub(
-                createDispatchCallbackHandle((_, _) -> handler.run()), DISPATCH_DESCRIPTOR, arena);
+  public void invalidate(@NonNull String name) {
+    invalidateScript(name, "");
+  }
 
-    wbNative.webview_dispatch(webview, callbackStub, 0);
+  @Override
+  public void invalidate(@NonNull String name, @NonNull String jsonArgs) {
+    // a string literal, the page parses it as JSON and never evaluates it
+    var key = new StringBuilder(jsonArgs.length() + 8).append(", \"");
+    invalidateScript(name, WebviewUtil.jsonEscape(jsonArgs, utf8, key).append('"').toString());
   }
 
-  private static MethodHandle createDispatchCallbackHandle(DispatchCallback callback) {
-    try {
-      return MethodHandles.lookup()
-          .bind(
-              callback,
-              "callback",
-              MethodType.methodType(void.class, MemorySegment.class, long.class));
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to create callback handle", e);
+  @Override
+  public void publish(@NonNull String topic, @NonNull String json) {
+    topics().publish(topic, json);
+  }
+
+  @Override
+  public void publish(@NonNull String topic, @NonNull Supplier<String> json) {
+    topics().publish(topic, json);
+  }
+
+  @Override
+  public DomBatch dom() {
+    return new DomBatch(this, utf8);
+  }
+
+  @Override
+  public void registerScript(@NonNull String name, @NonNull String source) {
+    List<String> install = scripts.register(name, source, utf8);
+    if (install.isEmpty()) {
+      return;
+    }
+    // on page load from now on, and on the current page
+    dispatcher.post(
+        () -> {
+          for (String script : install) {
+            wbNative.webview_init(webview, script);
+            wbNative.webview_eval(webview, script);
+          }
+        });
+  }
+
+  @Override
+  public void invoke(@NonNull String name, @NonNull String jsonArgs) {
+    // after the install of the script, which is posted ahead of this
+    evalInOrder(scripts.invoke(name, WebviewUtil.forceSafeChars(jsonArgs, utf8)));
+  }
+
+  /**
+   * Return the topics, installing the function that the page reports subscriptions to on the first
+   * publish. Only webviews that publish bind it.
+   */
+  private Topics topics() {
+    if (topicsInstalled.compareAndSet(false, true)) {
+      register(
+          Topics.CONTROL,
+          (args, reply) -> {
+            try {
+              topics.control(decode(args));
+              reply.result(Utf8Text.NULL);
+            } catch (Throwable e) {
+              reply.error(e);
+            }
+          },
+          false,
+          BindOptions.interactive());
+      // a page that subscribed before the function was installed reports its subscriptions,
+      // before run() this is evaluated once the loop has installed the function
+      evalInOrder(Topics.SYNC);
+    }
+    return topics;
+  }
+
+  private void invalidateScript(String name, String key) {
+    int id = rpc.id(name);
+    if (id > 0) {
+      evalInOrder("window.__avaje__ && window.__avaje__.invalidate(" + id + key + ");");
     }
   }
 
+  @Override
+  public @Nullable BindStats bindStats(@NonNull String name) {
+    var admission = admissions.get(name);
+    return admission == null ? null : admission.stats();
+  }
+
+  @Override
+  public void dispatch(@NonNull Runnable handler) {
+    dispatcher.dispatch(handler);
+  }
+
+  @Override
+  public void dispatchLatest(@NonNull Object key, @NonNull Runnable handler) {
+    dispatcher.dispatchLatest(key, handler);
+  }
+
   @Override
   public void run() {
-    wbNative.webview_run(webview);
+    running = true;
+    dispatcher.uiThread(Thread.currentThread());
+    // bindings made before the loop runs
+    flushStubs();
+    new RunEvent.Start().commit();
+    var event = new RunEvent();
+    event.begin();
+    try {
+      wbNative.webview_run(webview);
+    } finally {
+      event.commit();
+      running = false;
+      dispatcher.uiThread(null);
+    }
     log.log(DEBUG, "destroy and terminate");
-    wbNative.webview_destroy(webview);
-    wbNative.webview_terminate(webview);
+    dispatcher.close();
+    synchronized (destroyLock) {
+      // async results and close() from other threads no longer reach the webview
+      destroyed = true;
+      wbNative.webview_destroy(webview);
+      wbNative.webview_terminate(webview);
+    }
+    resources.destroyed();
+    releaseResources();
   }
 
   @Override
   public void close() {
     log.log(DEBUG, "close");
-    wbNative.webview_terminate(webview);
+    synchronized (destroyLock) {
+      if (destroyed) {
+        // run() has returned, e.g. the shutdown hook of a webview that was closed by the user
+        return;
+      }
+      wbNative.webview_terminate(webview);
+    }
+    if (!running) {
+      // otherwise released by run() once the loop has stopped calling back
+      releaseResources();
+    }
+  }
+
+  /** Release the callbacks and memory held for the webview, once. */
+  private void releaseResources() {
+    if (!released.compareAndSet(false, true)) {
+      return;
+    }
+    dispatcher.close();
+    resources.released(0);
+    streams.close();
+    calls.close();
+    evals.close();
+    topics.close();
+    rpc.clear();
+    PageStubs.detach(wbNative);
+    synchronized (rpc) {
+      if (entry != null) {
+        entry.release();
+        resources.released(entry.name().byteSize());
+      }
+    }
+    resources.checkReleased();
+  }
+
+  @Override
+  public ResourceUsage resourceUsage() {
+    return resources.usage();
   }
 
   @Override
   public void setDarkAppearance(boolean shouldAppearDark) {
-    if (WINDOWS == OS_FAMILY) {
+    if (windows) {
       WindowsHelper.setWindowAppearance(this, shouldAppearDark);
-    } else if (OS_DISTRIBUTION == MACOS) {
+    } else if (macos) {
       MacOSHelper.setWindowAppearance(this, shouldAppearDark);
     }
   }
 
   @Override
   public Webview maximizeWindow() {
-    if (WINDOWS == OS_FAMILY) {
+    if (windows) {
       WindowsHelper.maximizeWindow(this);
-    } else if (OS_DISTRIBUTION == MACOS) {
+    } else if (macos) {
       MacOSHelper.maximizeWindow(this);
     }
     return this;
@@ -307,9 +888,9 @@ final class DWebView implements Webview {
 
   @Override
   public Webview fullscreen() {
-    if (WINDOWS == OS_FAMILY) {
+    if (windows) {
       WindowsHelper.fullscreen(this);
-    } else if (OS_DISTRIBUTION == MACOS) {
+    } else if (macos) {
       MacOSHelper.fullscreen(this);
     }
     return this;
@@ -320,14 +901,24 @@ final class DWebView implements Webview {
     return wbNative.webview_version();
   }
 
+  @Override
+  public Set<String> capabilities() {
+    return wbNative.capabilities();
+  }
+
+  @Override
+  public MemorySegment nativeHandle(NativeHandleKind kind) {
+    return wbNative.webview_get_native_handle(webview, kind.ordinal());
+  }
+
   @Override
   public void setIcon(Path iconPath) {
     if (!Files.exists(iconPath)) {
       throw new IllegalArgumentException("Icon file not found: " + iconPath);
     }
-    if (WINDOWS == OS_FAMILY) {
+    if (windows) {
       WindowsHelper.setIcon(this, iconPath);
-    } else if (OS_DISTRIBUTION == MACOS) {
+    } else if (macos) {
       MacOSHelper.setIcon(this, iconPath);
     }
   }
@@ -355,7 +946,7 @@ final class DWebView implements Webview {
    * @throws UnsupportedOperationException if the environment does not meet the required conditions.
    */
   private void checkEnvironment() {
-    if (OS_DISTRIBUTION == MACOS) {
+    if (macos) {
       var mainThread = "main".equals(Thread.currentThread().getName());
       if (!mainThread) {
         throw new UnsupportedOperationException(ERROR_MAC_NOT_MAIN_THREAD);
@@ -366,23 +957,259 @@ final class DWebView implements Webview {
     }
   }
 
-  /** Used in {@code webview_bind} */
-  @FunctionalInterface
-  private interface BindCallback {
-    /**
-     * @param seq The request id, used in {@code webview_return}
-     * @param req The javascript arguments converted to a json array (string)
-     */
-    void callback(long seq, String req);
+  /** The shared upcall stub for all bindings, linked once on first bind. */
+  private static final class BindStub {
+
+    static final MemorySegment STUB = createStub();
+
+    private static MemorySegment createStub() {
+      try {
+        MethodHandle target =
+            MethodHandles.lookup()
+                .findStatic(
+                    DWebView.class,
+                    "bindCallbackInvoke",
+                    MethodType.methodType(
+                        void.class, MemorySegment.class, MemorySegment.class, long.class));
+        var stub = Linker.nativeLinker().upcallStub(target, BIND_DESCRIPTOR, Arena.global());
+        ResourceTracker.stubLinked();
+        return stub;
+      } catch (Exception e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+  }
+
+  /** Returns the result of a single call, to the id copied during the upcall. */
+  private final class Returns implements RpcChannel.Reply {
+
+    private final String seq;
+
+    Returns(String seq) {
+      this.seq = seq;
+    }
+
+    @Override
+    public void result(String json) {
+      webviewReturn(seq, false, json);
+    }
+
+    @Override
+    public void result(Utf8Text json) {
+      webviewReturn(seq, false, json);
+    }
+
+    @Override
+    public void error(Throwable error) {
+      returnError(seq, error);
+    }
+
+    @Override
+    public void rejected(String json) {
+      webviewReturn(seq, true, json);
+    }
+
+    @Override
+    public void aborted() {
+      webviewReturn(seq, true, ABORTED);
+    }
+  }
+
+  /**
+   * The stubs installed into the page, called by name by the fake backend. Holds the channel only,
+   * so attaching it does not keep the webview reachable.
+   */
+  private static final class Stubs extends PageStubs {
+
+    private final RpcChannel rpc;
+
+    Stubs(RpcChannel rpc) {
+      this.rpc = rpc;
+    }
+
+    @Override
+    public String entry() {
+      return RpcChannel.ENTRY;
+    }
+
+    @Override
+    public Set<String> names() {
+      return rpc.stubNames();
+    }
+
+    @Override
+    public int id(String name) {
+      return rpc.stubId(name);
+    }
+
+    @Override
+    public @Nullable String request(String name, String jsonArgs) {
+      int id = rpc.stubId(name);
+      return id < 0 ? null : "[" + id + "," + jsonArgs + "]";
+    }
+  }
+
+  /** Records a call for JFR when it is settled, on the thread that settles it. */
+  private static final class RecordedReply implements RpcChannel.Reply {
+
+    private final RpcChannel.Reply reply;
+    private final BindUpcallEvent event;
+    private final String binding;
+    private final long requestBytes;
+
+    RecordedReply(
+        RpcChannel.Reply reply, BindUpcallEvent event, String binding, long requestBytes) {
+      this.reply = reply;
+      this.event = event;
+      this.binding = binding;
+      this.requestBytes = requestBytes;
+    }
+
+    @Override
+    public void result(String json) {
+      reply.result(json);
+      event.result(json);
+      event.commit(binding, requestBytes);
+    }
+
+    @Override
+    public void result(Utf8Text json) {
+      reply.result(json);
+      event.result(json);
+      event.commit(binding, requestBytes);
+    }
+
+    @Override
+    public void error(Throwable error) {
+      reply.error(error);
+      event.failed();
+      event.commit(binding, requestBytes);
+    }
+
+    @Override
+    public void rejected(String json) {
+      reply.rejected(json);
+      event.failed();
+      event.commit(binding, requestBytes);
+    }
+
+    @Override
+    public void aborted() {
+      reply.aborted();
+      event.commit(binding, requestBytes);
+    }
+
+    @Override
+    public void onAbort(Runnable action) {
+      reply.onAbort(action);
+    }
+  }
+
+  /**
+   * The handler thread and future of an async call, abort interrupts the thread while the handler
+   * runs and cancels the future it returned.
+   */
+  private static final class AsyncCall {
+
+    private @Nullable Thread thread;
+    private @Nullable CompletableFuture<?> future;
+    private boolean aborted;
+
+    synchronized boolean start() {
+      thread = Thread.currentThread();
+      return !aborted;
+    }
+
+    synchronized void applied(@Nullable CompletableFuture<?> future) {
+      thread = null;
+      this.future = future;
+      if (aborted) {
+        // clear the interrupt of the abort, the thread may go on to run other tasks, an interrupt
+        // from anywhere else is left for the executor
+        Thread.interrupted();
+        if (future != null) {
+          future.cancel(true);
+        }
+      }
+    }
+
+    synchronized void abort() {
+      aborted = true;
+      if (thread != null) {
+        thread.interrupt();
+      }
+      if (future != null) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /** Collects the results of a batch of calls, returned together once all are complete. */
+  private final class BatchReturns {
+
+    private final String seq;
+    private final String[] results;
+    private final AtomicInteger remaining;
+
+    BatchReturns(String seq, int size) {
+      this.seq = seq;
+      this.results = new String[size];
+      this.remaining = new AtomicInteger(size);
+      if (size == 0) {
+        webviewReturn(seq, false, "[]");
+      }
+    }
+
+    RpcChannel.Reply slot(int index) {
+      return new RpcChannel.Reply() {
+        @Override
+        public void result(String json) {
+          complete(index, "[0," + json + "]");
+        }
+
+        @Override
+        public void result(Utf8Text json) {
+          complete(index, "[0," + json + "]");
+        }
+
+        @Override
+        public void error(Throwable error) {
+          complete(index, "[1," + errorJson(error) + "]");
+        }
+
+        @Override
+        public void rejected(String json) {
+          complete(index, "[1," + json + "]");
+        }
+
+        @Override
+        public void aborted() {
+          complete(index, "[1," + ABORTED + "]");
+        }
+      };
+    }
+
+    private void complete(int index, String result) {
+      results[index] = result;
+      // the decrement publishes the result to the thread that completes the batch
+      if (remaining.decrementAndGet() == 0) {
+        webviewReturn(seq, false, "[" + String.join(",", results) + "]");
+      }
+    }
   }
 
-  /** Used in {@code webview_dispatch} */
-  @FunctionalInterface
-  private interface DispatchCallback {
-    /**
-     * @param webview The pointer of the webview
-     * @param arg Unused
-     */
-    void callback(MemorySegment webview, long arg);
+  /**
+   * The native RPC entry, the arena holds the native state of the binding and is closed when the
+   * webview is closed.
+   *
+   * <p>The name is not interned process wide: it is marshalled once per bind, not per call, and an
+   * interned copy could never be freed, so each bind and close of a webview would leak it.
+   */
+  private record Binding(long id, Arena arena, MemorySegment name) {
+
+    void release() {
+      BINDINGS.remove(id);
+      arena.close();
+    }
   }
 }
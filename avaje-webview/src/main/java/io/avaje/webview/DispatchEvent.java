@@ -0,0 +1,26 @@
+package io.avaje.webview;
+
+import module java.base;
+import module jdk.jfr;
+
+/**
+ * JFR event for a dispatched task. The duration is the time from dispatch until the task starts
+ * on the UI thread, the time the task then takes is recorded separately.
+ */
+@Name("io.avaje.webview.Dispatch")
+@Label("Webview Dispatch")
+@Category({"Avaje", "Webview"})
+@Description("A task dispatched to the UI thread, the duration is the latency until it ran")
+@Threshold("1 ms")
+@StackTrace(false)
+final class DispatchEvent extends Event {
+
+  @Label("Run Time")
+  @Description("The time the task took on the UI thread")
+  @Timespan
+  long runTime;
+
+  @Label("Latest")
+  @Description("Dispatched via dispatchLatest, superseded tasks are not recorded")
+  boolean latest;
+}
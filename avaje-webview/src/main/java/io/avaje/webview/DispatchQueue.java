@@ -0,0 +1,282 @@
+package io.avaje.webview;
+
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import module java.base;
+import module org.jspecify;
+
+import io.avaje.webview.Webview.DispatchOverflow;
+import io.avaje.webview.spi.WebviewNative;
+
+/**
+ * Runs tasks on the UI thread of a webview.
+ *
+ * <ul>
+ *   <li>Tasks go into a lock-free queue, a single {@code webview_dispatch} wakes the UI thread
+ *       which then drains the queue in batches of up to {@link #MAX_BATCH} tasks. Producers only
+ *       call into native code when the queue goes from idle to scheduled.
+ *   <li>All webviews share one upcall stub, the native {@code arg} identifies the queue.
+ *   <li>{@link #dispatchLatest(Object, Runnable)} coalesces by key, only the newest pending task
+ *       for a key runs.
+ *   <li>Optionally bounded, when full tasks are dropped or the producer blocks. A producer only
+ *       blocks while the loop runs, a full queue that is not being drained fails fast.
+ *   <li>Tasks dispatched from the UI thread while the loop runs execute immediately.
+ * </ul>
+ *
+ * <p>Dispatch is not allocation free, each task costs a node of the lock-free queue, plus a
+ * {@code Latest} entry per key for dispatchLatest and a wrapper while JFR is recording. What it
+ * removes is the upcall stub and arena that were created per dispatch, and the native call per
+ * task.
+ */
+final class DispatchQueue {
+
+  private static final System.Logger log = System.getLogger("io.avaje.webview");
+
+  static final int MAX_BATCH = 1024;
+
+  private static final FunctionDescriptor DISPATCH_DESCRIPTOR =
+      FunctionDescriptor.ofVoid(
+          ADDRESS, // webview pointer
+          JAVA_LONG // arg, the id of the queue in QUEUES
+          );
+
+  private static final CallbackRegistry<DispatchQueue> QUEUES = new CallbackRegistry<>();
+
+  private final WebviewNative wbNative;
+  private final MemorySegment webview;
+  private final long id;
+  private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+  private final ConcurrentHashMap<Object, Runnable> latest = new ConcurrentHashMap<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final LongAdder dropped = new LongAdder();
+  private final @Nullable Semaphore permits;
+  private final int capacity;
+  private final boolean block;
+  private volatile @Nullable Thread uiThread;
+  private volatile boolean closed;
+
+  /**
+   * @param capacity the maximum number of pending tasks, 0 for unbounded
+   * @param overflow what to do when a bounded queue is full
+   */
+  DispatchQueue(
+      WebviewNative wbNative, MemorySegment webview, int capacity, DispatchOverflow overflow) {
+    this.wbNative = wbNative;
+    this.webview = webview;
+    this.capacity = capacity;
+    this.permits = capacity > 0 ? new Semaphore(capacity) : null;
+    this.block = overflow == DispatchOverflow.BLOCK;
+    this.id = QUEUES.register(this);
+  }
+
+  /** Set the thread running the webview loop, null when the loop has stopped. */
+  void uiThread(@Nullable Thread thread) {
+    this.uiThread = thread;
+  }
+
+  /** Return the number of tasks dropped as the queue was full. */
+  long dropped() {
+    return dropped.sum();
+  }
+
+  void dispatch(Runnable task) {
+    if (Thread.currentThread() == uiThread) {
+      task.run();
+      return;
+    }
+    if (acquire()) {
+      queue.offer(timed(task, false));
+      wake();
+    }
+  }
+
+  void dispatchLatest(Object key, Runnable task) {
+    if (Thread.currentThread() == uiThread) {
+      // a pending older task for the key must not run after this one
+      latest.remove(key);
+      task.run();
+      return;
+    }
+    if (!acquire()) {
+      return;
+    }
+    if (latest.put(key, timed(task, true)) != null) {
+      // replaced the pending task for the key, which already has its queue entry
+      release();
+      return;
+    }
+    queue.offer(new Latest(key));
+    wake();
+  }
+
+  /**
+   * Queue an internal task to run on the UI thread, even when called from the UI thread. It is
+   * not bounded by the capacity and is not timed.
+   */
+  void post(Runnable task) {
+    if (!closed) {
+      queue.offer(new Posted(task));
+      wake();
+    }
+  }
+
+  /** Stop accepting tasks, pending tasks are discarded and blocked producers released. */
+  void close() {
+    closed = true;
+    QUEUES.remove(id);
+    queue.clear();
+    latest.clear();
+    if (permits != null) {
+      permits.release(capacity);
+    }
+  }
+
+  private boolean acquire() {
+    if (closed) {
+      return false;
+    }
+    if (permits == null || permits.tryAcquire()) {
+      return true;
+    }
+    if (block) {
+      if (uiThread == null) {
+        throw new IllegalStateException(
+            "Dispatch queue is full and not drained, the webview is not running");
+      }
+      try {
+        permits.acquire();
+        return !closed;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    dropped.increment();
+    return false;
+  }
+
+  private void release() {
+    if (permits != null) {
+      permits.release();
+    }
+  }
+
+  private void wake() {
+    if (!closed && scheduled.compareAndSet(false, true)) {
+      wbNative.webview_dispatch(webview, DispatchStub.STUB, id);
+    }
+  }
+
+  /** Runs on the UI thread, drains up to a batch of tasks. */
+  private void drain() {
+    scheduled.set(false);
+    for (int i = 0; i < MAX_BATCH; i++) {
+      Runnable task = queue.poll();
+      if (task == null) {
+        return;
+      }
+      if (!(task instanceof Posted)) {
+        release();
+      }
+      try {
+        task.run();
+      } catch (Throwable e) {
+        log.log(ERROR, "Error running dispatched task", e);
+      }
+    }
+    // yield back to the loop so that rendering and input are not starved
+    if (!queue.isEmpty()) {
+      wake();
+    }
+  }
+
+  /** Wrap the task to record a {@link DispatchEvent} when JFR is recording. */
+  private static Runnable timed(Runnable task, boolean latest) {
+    var event = new DispatchEvent();
+    if (!event.isEnabled()) {
+      return task;
+    }
+    event.latest = latest;
+    event.begin();
+    return new Timed(task, event);
+  }
+
+  /** Upcall target of the shared dispatch stub. */
+  @SuppressWarnings("unused")
+  private static void dispatchInvoke(MemorySegment webview, long arg) {
+    DispatchQueue dispatchQueue = QUEUES.get(arg);
+    if (dispatchQueue != null) {
+      dispatchQueue.drain();
+    }
+  }
+
+  /** A task dispatched while JFR is recording, the event spans from dispatch until it runs. */
+  private record Timed(Runnable task, DispatchEvent event) implements Runnable {
+
+    @Override
+    public void run() {
+      event.end();
+      if (!event.shouldCommit()) {
+        task.run();
+        return;
+      }
+      long start = System.nanoTime();
+      try {
+        task.run();
+      } finally {
+        event.runTime = System.nanoTime() - start;
+        event.commit();
+      }
+    }
+  }
+
+  /** A task queued by {@link #post(Runnable)}, holds no permit. */
+  private record Posted(Runnable task) implements Runnable {
+
+    @Override
+    public void run() {
+      task.run();
+    }
+  }
+
+  /** Queue entry for a key of dispatchLatest, runs the newest task for the key. */
+  private final class Latest implements Runnable {
+
+    private final Object key;
+
+    Latest(Object key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      Runnable task = latest.remove(key);
+      if (task != null) {
+        task.run();
+      }
+    }
+  }
+
+  /** The shared upcall stub for all dispatch queues, linked once on first dispatch. */
+  private static final class DispatchStub {
+
+    static final MemorySegment STUB = createStub();
+
+    private static MemorySegment createStub() {
+      try {
+        MethodHandle target =
+            MethodHandles.lookup()
+                .findStatic(
+                    DispatchQueue.class,
+                    "dispatchInvoke",
+                    MethodType.methodType(void.class, MemorySegment.class, long.class));
+        var stub = Linker.nativeLinker().upcallStub(target, DISPATCH_DESCRIPTOR, Arena.global());
+        ResourceTracker.stubLinked();
+        return stub;
+      } catch (Exception e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+  }
+}
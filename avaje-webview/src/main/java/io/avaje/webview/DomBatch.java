@@ -0,0 +1,236 @@
+package io.avaje.webview;
+
+import module java.base;
+import module org.jspecify;
+
+/**
+ * Records DOM operations and applies them in the page together, in one {@code
+ * requestAnimationFrame} callback, see {@link Webview#dom()}.
+ *
+ * <p>Writes apply to every element matching the selector, reads to the first one. The reads of a
+ * batch are made before its writes, so they see the layout of the previous frame and the page
+ * never lays out between a write and a read. A batch is not thread safe and is used once.
+ *
+ * <pre>{@code
+ * DomBatch dom = webview.dom();
+ * CompletableFuture<String> size = dom.measure("#chart");
+ * dom.setText("#price", "101.50")
+ *     .toggleClass("#price", "up", true)
+ *     .insertHtml("#log", Position.BEFORE_END, "<li>ACME 101.50</li>")
+ *     .flush();
+ * }</pre>
+ */
+public final class DomBatch {
+
+  /** Where {@link #insertHtml(String, Position, String)} inserts, as {@code insertAdjacentHTML}. */
+  public enum Position {
+    /** Before the element. */
+    BEFORE_BEGIN("beforebegin"),
+    /** Inside the element, before its first child. */
+    AFTER_BEGIN("afterbegin"),
+    /** Inside the element, after its last child. */
+    BEFORE_END("beforeend"),
+    /** After the element. */
+    AFTER_END("afterend");
+
+    private final String value;
+
+    Position(String value) {
+      this.value = value;
+    }
+  }
+
+  // the operation codes of the runtime's dom function
+  private static final int TEXT = 0;
+  private static final int ATTRIBUTE = 1;
+  private static final int CLASS = 2;
+  private static final int HTML = 3;
+  private static final int MEASURE = 4;
+  private static final int PROPERTY = 5;
+
+  private final DWebView webview;
+  private final boolean utf8;
+  private final StringBuilder commands = new StringBuilder(128).append('[');
+  private final List<CompletableFuture<String>> reads = new ArrayList<>();
+  private int size;
+  private boolean flushed;
+
+  DomBatch(DWebView webview, boolean utf8) {
+    this.webview = webview;
+    this.utf8 = utf8;
+  }
+
+  /**
+   * Sets the text content of the elements.
+   *
+   * @param selector the CSS selector of the elements
+   * @param text the text
+   * @return this batch
+   */
+  public DomBatch setText(@NonNull String selector, @NonNull String text) {
+    return add(TEXT, selector, quote(text), null);
+  }
+
+  /**
+   * Sets an attribute of the elements, or removes it.
+   *
+   * @param selector the CSS selector of the elements
+   * @param name the name of the attribute
+   * @param value the value, {@code null} to remove the attribute
+   * @return this batch
+   */
+  public DomBatch setAttribute(
+      @NonNull String selector, @NonNull String name, @Nullable String value) {
+    return add(ATTRIBUTE, selector, quote(name), value == null ? "null" : quote(value));
+  }
+
+  /**
+   * Adds a class to the elements or removes it.
+   *
+   * @param selector the CSS selector of the elements
+   * @param className the class
+   * @param on {@code true} to add the class, {@code false} to remove it
+   * @return this batch
+   */
+  public DomBatch toggleClass(@NonNull String selector, @NonNull String className, boolean on) {
+    return add(CLASS, selector, quote(className), Boolean.toString(on));
+  }
+
+  /**
+   * Parses HTML and inserts it relative to the elements.
+   *
+   * @param selector the CSS selector of the elements
+   * @param position where to insert
+   * @param html the HTML
+   * @return this batch
+   */
+  public DomBatch insertHtml(
+      @NonNull String selector, @NonNull Position position, @NonNull String html) {
+    return add(HTML, selector, quote(position.value), quote(html));
+  }
+
+  /**
+   * Measures the first element, the future completes with its bounding client rectangle as JSON,
+   * {@code {"x":..,"y":..,"width":..,"height":..}}, or {@code null} when no element matches.
+   *
+   * <p>The reads of a batch are made before its writes, so this is the layout before the writes
+   * of this batch, including those recorded before it. Flush the writes first to measure them.
+   *
+   * @param selector the CSS selector of the element
+   * @return the JSON rectangle, once the batch is applied
+   */
+  public CompletableFuture<String> measure(@NonNull String selector) {
+    add(MEASURE, selector, null, null);
+    return read();
+  }
+
+  /**
+   * Reads a property of the first element, e.g. {@code scrollTop} or {@code value}. The future
+   * completes with the value as JSON, or {@code null} when no element matches.
+   *
+   * <p>The reads of a batch are made before its writes, so {@code setText(s, "x")} followed by
+   * {@code property(s, "textContent")} returns the text from before. Flush the writes first to
+   * read them back.
+   *
+   * @param selector the CSS selector of the element
+   * @param name the name of the property
+   * @return the JSON value, once the batch is applied
+   */
+  public CompletableFuture<String> property(@NonNull String selector, @NonNull String name) {
+    add(PROPERTY, selector, quote(name), null);
+    return read();
+  }
+
+  /** Return the number of operations recorded. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Sends the operations to the page, which applies them in its next animation frame. The reads
+   * of the batch complete at the same time.
+   *
+   * @return completes once the operations are applied, or fails with a {@link
+   *     WebviewEvalException} if the page could not apply them
+   */
+  public CompletableFuture<Void> flush() {
+    if (flushed) {
+      throw new IllegalStateException("DomBatch already flushed");
+    }
+    flushed = true;
+    if (size == 0) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return webview
+        .applyDom(commands.append(']').toString())
+        .handle(
+            (json, error) -> {
+              complete(json, error);
+              if (error != null) {
+                throw error instanceof CompletionException e ? e : new CompletionException(error);
+              }
+              return null;
+            });
+  }
+
+  /** Complete the reads with the results, an array of the JSON text of each read. */
+  private void complete(@Nullable String json, @Nullable Throwable error) {
+    if (error instanceof CompletionException e && e.getCause() != null) {
+      error = e.getCause();
+    }
+    List<String> results = error == null && json != null ? strings(json) : List.of();
+    for (int i = 0; i < reads.size(); i++) {
+      var read = reads.get(i);
+      if (i < results.size()) {
+        read.complete(results.get(i));
+      } else {
+        read.completeExceptionally(
+            error != null ? error : new WebviewEvalException("Malformed DOM read results"));
+      }
+    }
+  }
+
+  /** Return the values of a JSON array of strings, empty if it is not one. */
+  static List<String> strings(String json) {
+    var values = new ArrayList<String>();
+    int i = json.indexOf('[');
+    while (i >= 0 && (i = json.indexOf('"', i + 1)) >= 0) {
+      int start = i;
+      while (++i < json.length() && json.charAt(i) != '"') {
+        if (json.charAt(i) == '\\') {
+          i++;
+        }
+      }
+      if (i >= json.length()) {
+        return List.of();
+      }
+      values.add(WebviewUtil.jsonUnquote(json.substring(start, i + 1)));
+    }
+    return values;
+  }
+
+  private CompletableFuture<String> read() {
+    var future = new CompletableFuture<String>();
+    reads.add(future);
+    return future;
+  }
+
+  private DomBatch add(int op, String selector, @Nullable String a, @Nullable String b) {
+    if (flushed) {
+      throw new IllegalStateException("DomBatch already flushed");
+    }
+    commands.append(size++ == 0 ? "[" : ",[").append(op).append(',').append(quote(selector));
+    if (a != null) {
+      commands.append(',').append(a);
+    }
+    if (b != null) {
+      commands.append(',').append(b);
+    }
+    commands.append(']');
+    return this;
+  }
+
+  private String quote(String value) {
+    return '"' + WebviewUtil.jsonEscape(value, utf8) + '"';
+  }
+}
@@ -0,0 +1,41 @@
+package io.avaje.webview;
+
+import module java.base;
+import module jdk.jfr;
+
+/** JFR event for a call from Java into libwebview. */
+@Name("io.avaje.webview.Downcall")
+@Label("Webview Downcall")
+@Category({"Avaje", "Webview"})
+@Description("A call from Java into the native webview library")
+@Threshold("1 ms")
+@StackTrace(false)
+final class DowncallEvent extends Event {
+
+  @Label("Function")
+  String function;
+
+  @Label("Payload Size")
+  @Description("The UTF-8 bytes of the string argument, 0 when there is none")
+  @DataAmount
+  long payloadBytes;
+
+  /** Commit if recording and over the threshold, the payload is a NUL terminated string. */
+  void commit(String function, MemorySegment payload) {
+    end();
+    if (shouldCommit()) {
+      this.function = function;
+      this.payloadBytes = NativeStrings.strlen(payload);
+      commit();
+    }
+  }
+
+  /** Commit if recording and over the threshold. */
+  void commit(String function) {
+    end();
+    if (shouldCommit()) {
+      this.function = function;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package io.avaje.webview;
+
+import module java.base;
+
+import io.avaje.webview.spi.WebviewNative;
+
+/**
+ * Coalesces the scripts passed to {@link Webview#eval(String)} into one {@code webview_eval} per
+ * UI tick.
+ *
+ * <ul>
+ *   <li>The first pending script schedules a flush on the UI thread, after at most the latency.
+ *       A flush evaluates everything pending, in order, with one script per {@link #maxBatch}
+ *       statements.
+ *   <li>Reaching the maximum batch size schedules a flush without waiting for the latency.
+ *   <li>Each statement is evaluated by its own indirect eval, so one that throws, or does not
+ *       parse, does not stop the others. Unlike a script, its top-level {@code let}, {@code
+ *       const} and {@code class} declarations are local to the eval.
+ *   <li>Pre-encoded scripts keep their order, they are evaluated on their own between batches.
+ *       So do tasks, the other scripts that must not overtake pending evals.
+ *   <li>A navigation {@link #flush() flushes} on the caller's thread before it navigates, so the
+ *       pending scripts run on the page they were meant for.
+ * </ul>
+ */
+final class EvalBatch {
+
+  private static final String PREFIX =
+      """
+      (function (run) {
+      """;
+  private static final String SUFFIX =
+      """
+      })(function (script) {
+      try {
+      (0, eval)(script);
+      } catch (e) {
+      console.error('[Webview]', 'An error occurred whilst evaluating script:', script, e);
+      }
+      });""";
+
+  private final DispatchQueue dispatcher;
+  private final WebviewNative wbNative;
+  private final MemorySegment webview;
+  private final int maxBatch;
+  private final long latencyNanos;
+  private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final Executor flusher;
+  private final boolean utf8;
+
+  /**
+   * @param maxBatch the maximum statements per script
+   * @param maxLatency how long a script may wait for others, zero for until the next UI tick
+   * @param utf8 true to pass non-ASCII chars of the scripts through, false to escape them
+   */
+  EvalBatch(
+      DispatchQueue dispatcher,
+      WebviewNative wbNative,
+      MemorySegment webview,
+      int maxBatch,
+      Duration maxLatency,
+      boolean utf8) {
+    this.dispatcher = dispatcher;
+    this.wbNative = wbNative;
+    this.webview = webview;
+    this.maxBatch = maxBatch;
+    this.utf8 = utf8;
+    this.latencyNanos = maxLatency.toNanos();
+    this.flusher =
+        latencyNanos == 0
+            ? dispatcher::post
+            : CompletableFuture.delayedExecutor(
+                latencyNanos, TimeUnit.NANOSECONDS, dispatcher::post);
+  }
+
+  /** Queue a script, a {@link String} or {@link Utf8Text}, or a {@link Runnable} task. */
+  void add(Object script) {
+    pending.offer(script);
+    int count = size.incrementAndGet();
+    if (scheduled.compareAndSet(false, true)) {
+      flusher.execute(this::flush);
+    } else if (count % maxBatch == 0 && latencyNanos > 0) {
+      // a full batch does not wait for the latency
+      dispatcher.post(this::flush);
+    }
+  }
+
+  /** Return the number of pending scripts. */
+  int size() {
+    return size.get();
+  }
+
+  /**
+   * Evaluate the pending scripts. Runs on the UI thread when scheduled, or on the thread of a
+   * navigation, one flush at a time so the scripts keep their order.
+   */
+  synchronized void flush() {
+    scheduled.set(false);
+    var script = new StringBuilder(PREFIX);
+    int statements = 0;
+    Object next;
+    while ((next = pending.poll()) != null) {
+      size.decrementAndGet();
+      if (next instanceof Utf8Text encoded) {
+        statements = evaluate(script, statements);
+        wbNative.webview_eval(webview, encoded);
+        continue;
+      }
+      if (next instanceof Runnable task) {
+        statements = evaluate(script, statements);
+        task.run();
+        continue;
+      }
+      WebviewUtil.jsonEscape((String) next, utf8, script.append("run(\"")).append("\");\n");
+      if (++statements == maxBatch) {
+        statements = evaluate(script, statements);
+      }
+    }
+    evaluate(script, statements);
+  }
+
+  /** Evaluate the statements appended to the script, if any, and reset it. */
+  private int evaluate(StringBuilder script, int statements) {
+    if (statements > 0) {
+      wbNative.webview_eval(webview, script.append(SUFFIX).toString());
+      script.setLength(PREFIX.length());
+    }
+    return 0;
+  }
+}
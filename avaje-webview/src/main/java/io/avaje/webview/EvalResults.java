@@ -0,0 +1,110 @@
+package io.avaje.webview;
+
+import module java.base;
+
+/**
+ * The outstanding {@link Webview#evalForResult(String)} calls and {@link DomBatch DOM batches} of
+ * a webview.
+ *
+ * <p>Each eval gets an id, the script reports its value or error through the one internal
+ * function {@value #RESULT} as {@code (id, ok, value)}. Outstanding evals are independent, they
+ * complete in any order and each has its own timeout.
+ */
+final class EvalResults {
+
+  /** The name of the function that evaluated scripts report their result to. */
+  static final String RESULT = "__avaje_eval__";
+
+  private final AtomicLong ids = new AtomicLong();
+  private final Map<Long, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+
+  /** Register an eval, the future is removed once complete and fails after the timeout. */
+  long open(CompletableFuture<String> future, Duration timeout) {
+    long id = ids.incrementAndGet();
+    pending.put(id, future);
+    future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    future.whenComplete((_, _) -> pending.remove(id));
+    return id;
+  }
+
+  /**
+   * Return the script that evaluates the source and reports its result. The source is evaluated
+   * as a global script, its value is that of the last expression, and a Promise is awaited. A
+   * value that JSON cannot serialize, e.g. a cyclic object or a BigInt, is reported as an error.
+   *
+   * @param utf8 true to pass non-ASCII chars of the source through, false to escape them
+   */
+  static String script(long id, String source, boolean utf8) {
+    return "(function () {\n"
+        + "  var report = function (ok, value) { window."
+        + RESULT
+        + "("
+        + id
+        + ", ok, value); };\n"
+        + "  new Promise(function (resolve) { resolve((0, eval)(\""
+        + WebviewUtil.jsonEscape(source, utf8)
+        + "\")); }).then(\n"
+        + "    function (value) {\n"
+        + "      if (value === undefined) value = null;\n"
+        + "      try { JSON.stringify(value); } catch (e) { report(false, String(e)); return; }\n"
+        + "      report(true, value);\n"
+        + "    },\n"
+        + "    function (e) { report(false, e && e.stack ? String(e.stack) : String(e)); });\n"
+        + "})();";
+  }
+
+  /**
+   * Return the script that applies the JSON array of commands of a {@link DomBatch} and reports the
+   * JSON array of its reads. The commands are passed to the runtime as data, nothing is evaluated,
+   * so a page Content Security Policy without {@code 'unsafe-eval'} does not block it.
+   */
+  static String dom(long id, String commands) {
+    return "window.__avaje__.dom("
+        + commands
+        + ").then(\n"
+        + "  function (results) { window."
+        + RESULT
+        + "("
+        + id
+        + ", true, results); },\n"
+        + "  function (e) { window."
+        + RESULT
+        + "("
+        + id
+        + ", false, e && e.stack ? String(e.stack) : String(e)); });";
+  }
+
+  /** Handle {@code [id,ok,value]} from the page. */
+  void complete(String jsonArgs) {
+    int first = jsonArgs.indexOf(',');
+    int second = first < 0 ? -1 : jsonArgs.indexOf(',', first + 1);
+    if (second < 0 || !jsonArgs.startsWith("[") || !jsonArgs.endsWith("]")) {
+      throw new IllegalArgumentException("Malformed eval result");
+    }
+    long id = Long.parseLong(jsonArgs.substring(1, first).strip());
+    boolean ok = jsonArgs.substring(first + 1, second).strip().equals("true");
+    String value = jsonArgs.substring(second + 1, jsonArgs.length() - 1);
+    CompletableFuture<String> future = pending.remove(id);
+    if (future == null) {
+      // timed out or the webview closed
+      return;
+    }
+    if (ok) {
+      future.complete(value);
+    } else {
+      future.completeExceptionally(new WebviewEvalException(WebviewUtil.jsonUnquote(value)));
+    }
+  }
+
+  /** Return the number of outstanding evals. */
+  int size() {
+    return pending.size();
+  }
+
+  /** Fail the outstanding evals, the webview is closing. */
+  void close() {
+    for (var future : pending.values()) {
+      future.completeExceptionally(new CancellationException("Webview closed"));
+    }
+  }
+}
@@ -0,0 +1,520 @@
+package io.avaje.webview;
+
+import static io.avaje.webview.platform.Platform.OS_DISTRIBUTION;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BOOLEAN;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import module java.base;
+import module org.jspecify;
+
+import io.avaje.webview.spi.WebviewNative;
+
+/** The default backend, calls the bundled libwebview via FFM. */
+final class FfmWebviewNative implements WebviewNative {
+
+  static WebviewBuilder builder() {
+    return new WebviewBuilder();
+  }
+
+  private static final Linker LINKER = Linker.nativeLinker();
+  private static final Linker.Option CRITICAL = Linker.Option.critical(false);
+
+  /** Functions of newer libwebview versions, used when the loaded library exports them. */
+  static final List<String> OPTIONAL_FUNCTIONS = List.of("webview_get_native_handle");
+
+  // Memory layouts for webview_version structures
+  private static final StructLayout WEBVIEW_VERSION_T_LAYOUT =
+      MemoryLayout.structLayout(
+          JAVA_INT.withName("major"), JAVA_INT.withName("minor"), JAVA_INT.withName("patch"));
+
+  private static final StructLayout WEBVIEW_VERSION_INFO_T_LAYOUT =
+      MemoryLayout.structLayout(
+          WEBVIEW_VERSION_T_LAYOUT.withName("version"),
+          MemoryLayout.sequenceLayout(32, JAVA_BYTE).withName("version_number"),
+          MemoryLayout.sequenceLayout(48, JAVA_BYTE).withName("pre_release"),
+          MemoryLayout.sequenceLayout(48, JAVA_BYTE).withName("build_metadata"));
+
+  /*
+   * Each downcall handle is linked on first use by the class initialization of its holder, a
+   * webview that is only created, shown and destroyed links only those functions. As static
+   * finals the handles are constants to the JIT, the same as when linked eagerly. Short calls
+   * that never block and never call back into Java are linked as critical, skipping the thread
+   * state transition of a regular downcall.
+   */
+
+  private static final class Version {
+    static final MethodHandle HANDLE =
+        link("webview_version", FunctionDescriptor.of(ADDRESS), CRITICAL);
+  }
+
+  private static final class Create {
+    static final MethodHandle HANDLE =
+        link("webview_create", FunctionDescriptor.of(ADDRESS, JAVA_BOOLEAN, ADDRESS));
+  }
+
+  private static final class GetWindow {
+    static final MethodHandle HANDLE =
+        link("webview_get_window", FunctionDescriptor.of(ADDRESS, ADDRESS), CRITICAL);
+  }
+
+  private static final class GetNativeHandle {
+    static final @Nullable MethodHandle HANDLE =
+        linkOptional(
+            "webview_get_native_handle",
+            FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_INT),
+            CRITICAL);
+  }
+
+  private static final class SetHtml {
+    static final MethodHandle HANDLE =
+        link("webview_set_html", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+  }
+
+  private static final class Navigate {
+    static final MethodHandle HANDLE =
+        link("webview_navigate", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+  }
+
+  private static final class SetTitle {
+    static final MethodHandle HANDLE =
+        link("webview_set_title", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+  }
+
+  private static final class SetSize {
+    static final MethodHandle HANDLE =
+        link(
+            "webview_set_size",
+            FunctionDescriptor.ofVoid(ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT),
+            CRITICAL);
+  }
+
+  private static final class Run {
+    static final MethodHandle HANDLE = link("webview_run", FunctionDescriptor.ofVoid(ADDRESS));
+  }
+
+  private static final class Destroy {
+    static final MethodHandle HANDLE = link("webview_destroy", FunctionDescriptor.ofVoid(ADDRESS));
+  }
+
+  private static final class Terminate {
+    static final MethodHandle HANDLE =
+        link("webview_terminate", FunctionDescriptor.ofVoid(ADDRESS));
+  }
+
+  private static final class Eval {
+    static final MethodHandle HANDLE =
+        link("webview_eval", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+  }
+
+  private static final class Init {
+    static final MethodHandle HANDLE =
+        link("webview_init", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+  }
+
+  private static final class Bind {
+    static final MethodHandle HANDLE =
+        link("webview_bind", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, ADDRESS, JAVA_LONG));
+  }
+
+  private static final class Unbind {
+    static final MethodHandle HANDLE =
+        link("webview_unbind", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+  }
+
+  private static final class Return {
+    static final MethodHandle HANDLE =
+        link(
+            "webview_return",
+            FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, JAVA_BOOLEAN, ADDRESS),
+            CRITICAL);
+  }
+
+  private static final class Dispatch {
+    static final MethodHandle HANDLE =
+        link("webview_dispatch", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, JAVA_LONG));
+  }
+
+  /** The loaded libwebview, looked up on first link. */
+  private static final class Library {
+    static final SymbolLookup LOOKUP = SymbolLookup.libraryLookup(libraryName(), Arena.global());
+    static final Set<String> CAPABILITIES = probe();
+
+    private static Set<String> probe() {
+      var present = new LinkedHashSet<String>();
+      for (String name : OPTIONAL_FUNCTIONS) {
+        if (LOOKUP.find(name).isPresent()) {
+          present.add(name);
+        }
+      }
+      return Collections.unmodifiableSet(present);
+    }
+  }
+
+  FfmWebviewNative() {}
+
+  @Override
+  public MemorySegment webview_create(boolean debug, MemorySegment window) {
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      MemorySegment result =
+          (MemorySegment)
+              Create.HANDLE.invokeExact(debug, window == null ? MemorySegment.NULL : window);
+      event.commit("webview_create");
+      return result;
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public MemorySegment webview_get_window(MemorySegment webview) {
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      MemorySegment result = (MemorySegment) GetWindow.HANDLE.invokeExact(webview);
+      event.commit("webview_get_window");
+      return result;
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public MemorySegment webview_get_native_handle(MemorySegment webview, int kind) {
+    MethodHandle handle = GetNativeHandle.HANDLE;
+    if (handle == null) {
+      throw new UnsupportedOperationException(
+          "webview_get_native_handle is not supported by the loaded libwebview");
+    }
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      MemorySegment result = (MemorySegment) handle.invokeExact(webview, kind);
+      event.commit("webview_get_native_handle");
+      return result;
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public void webview_set_html(MemorySegment webview, String html) {
+    var event = new DowncallEvent();
+    event.begin();
+    var strings = NativeStrings.local();
+    long mark = strings.mark();
+    try {
+      MemorySegment arg = strings.allocate(html);
+      SetHtml.HANDLE.invokeExact(webview, arg);
+      event.commit("webview_set_html", arg);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    } finally {
+      strings.release(mark);
+    }
+  }
+
+  @Override
+  public void webview_set_html(MemorySegment webview, Utf8Text html) {
+    var event = new DowncallEvent();
+    event.begin();
+    var strings = NativeStrings.local();
+    long mark = strings.mark();
+    try {
+      MemorySegment arg = strings.allocate(html);
+      SetHtml.HANDLE.invokeExact(webview, arg);
+      event.commit("webview_set_html", arg);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    } finally {
+      strings.release(mark);
+    }
+  }
+
+  @Override
+  public void webview_navigate(MemorySegment webview, String url) {
+    var event = new DowncallEvent();
+    event.begin();
+    var strings = NativeStrings.local();
+    long mark = strings.mark();
+    try {
+      MemorySegment arg = strings.allocate(url);
+      Navigate.HANDLE.invokeExact(webview, arg);
+      event.commit("webview_navigate", arg);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    } finally {
+      strings.release(mark);
+    }
+  }
+
+  @Override
+  public void webview_set_title(MemorySegment webview, String title) {
+    var event = new DowncallEvent();
+    event.begin();
+    var strings = NativeStrings.local();
+    long mark = strings.mark();
+    try {
+      MemorySegment arg = strings.allocate(title);
+      SetTitle.HANDLE.invokeExact(webview, arg);
+      event.commit("webview_set_title", arg);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    } finally {
+      strings.release(mark);
+    }
+  }
+
+  @Override
+  public void webview_set_size(MemorySegment webview, int width, int height, int hint) {
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      SetSize.HANDLE.invokeExact(webview, width, height, hint);
+      event.commit("webview_set_size");
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public void webview_run(MemorySegment webview) {
+    try {
+      Run.HANDLE.invokeExact(webview);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public void webview_destroy(MemorySegment webview) {
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      Destroy.HANDLE.invokeExact(webview);
+      event.commit("webview_destroy");
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public void webview_terminate(MemorySegment webview) {
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      Terminate.HANDLE.invokeExact(webview);
+      event.commit("webview_terminate");
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public void webview_eval(MemorySegment webview, String js) {
+    var event = new DowncallEvent();
+    event.begin();
+    var strings = NativeStrings.local();
+    long mark = strings.mark();
+    try {
+      MemorySegment arg = strings.allocate(js);
+      Eval.HANDLE.invokeExact(webview, arg);
+      event.commit("webview_eval", arg);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    } finally {
+      strings.release(mark);
+    }
+  }
+
+  @Override
+  public void webview_eval(MemorySegment webview, Utf8Text js) {
+    var event = new DowncallEvent();
+    event.begin();
+    var strings = NativeStrings.local();
+    long mark = strings.mark();
+    try {
+      MemorySegment arg = strings.allocate(js);
+      Eval.HANDLE.invokeExact(webview, arg);
+      event.commit("webview_eval", arg);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    } finally {
+      strings.release(mark);
+    }
+  }
+
+  @Override
+  public void webview_init(MemorySegment webview, String js) {
+    var event = new DowncallEvent();
+    event.begin();
+    var strings = NativeStrings.local();
+    long mark = strings.mark();
+    try {
+      MemorySegment arg = strings.allocate(js);
+      Init.HANDLE.invokeExact(webview, arg);
+      event.commit("webview_init", arg);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    } finally {
+      strings.release(mark);
+    }
+  }
+
+  @Override
+  public void webview_bind(
+      MemorySegment webview, MemorySegment name, MemorySegment callback, long arg) {
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      Bind.HANDLE.invokeExact(webview, name, callback, arg);
+      event.commit("webview_bind");
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public void webview_unbind(MemorySegment webview, MemorySegment name) {
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      Unbind.HANDLE.invokeExact(webview, name);
+      event.commit("webview_unbind");
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public void webview_return(MemorySegment webview, String id, boolean isError, String result) {
+    var event = new DowncallEvent();
+    event.begin();
+    var strings = NativeStrings.local();
+    long mark = strings.mark();
+    try {
+      MemorySegment seq = strings.allocate(id);
+      MemorySegment arg = strings.allocate(result);
+      Return.HANDLE.invokeExact(webview, seq, isError, arg);
+      event.commit("webview_return", arg);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    } finally {
+      strings.release(mark);
+    }
+  }
+
+  @Override
+  public void webview_return(MemorySegment webview, String id, boolean isError, Utf8Text result) {
+    var event = new DowncallEvent();
+    event.begin();
+    var strings = NativeStrings.local();
+    long mark = strings.mark();
+    try {
+      MemorySegment seq = strings.allocate(id);
+      MemorySegment arg = strings.allocate(result);
+      Return.HANDLE.invokeExact(webview, seq, isError, arg);
+      event.commit("webview_return", arg);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    } finally {
+      strings.release(mark);
+    }
+  }
+
+  @Override
+  public void webview_dispatch(MemorySegment webview, MemorySegment callback, long arg) {
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      Dispatch.HANDLE.invokeExact(webview, callback, arg);
+      event.commit("webview_dispatch");
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Set<String> capabilities() {
+    return Library.CAPABILITIES;
+  }
+
+  @Override
+  public String webview_version() {
+    var event = new DowncallEvent();
+    event.begin();
+    try {
+      MemorySegment result = (MemorySegment) Version.HANDLE.invokeExact();
+      event.commit("webview_version");
+
+      // Reinterpret the returned pointer with the struct layout
+      MemorySegment versionInfo = result.reinterpret(WEBVIEW_VERSION_INFO_T_LAYOUT.byteSize());
+
+      // Extract version_number string
+      long versionNumberOffset =
+          WEBVIEW_VERSION_INFO_T_LAYOUT.byteOffset(
+              MemoryLayout.PathElement.groupElement("version_number"));
+      return readCString(versionInfo, versionNumberOffset, 32);
+    } catch (Throwable e) {
+      throw new RuntimeException("Failed to get webview version", e);
+    }
+  }
+
+  /** Helper method to read a null-terminated C string from memory */
+  private static String readCString(MemorySegment segment, long offset, int maxLen) {
+    byte[] bytes = new byte[maxLen];
+    int len = 0;
+
+    for (int i = 0; i < maxLen; i++) {
+      byte b = segment.get(JAVA_BYTE, offset + i);
+      if (b == 0) break;
+      bytes[len++] = b;
+    }
+
+    return new String(bytes, 0, len);
+  }
+
+  /**
+   * Wraps a failure from an {@code invokeExact} call. Runtime exceptions and errors are passed
+   * through as is, checked throwables are wrapped.
+   */
+  private static RuntimeException rethrow(Throwable e) {
+    if (e instanceof RuntimeException re) {
+      return re;
+    }
+    if (e instanceof Error err) {
+      throw err;
+    }
+    return new RuntimeException(e);
+  }
+
+  /** The file name of the bundled library for this platform, as extracted by the builder. */
+  static String libraryName() {
+    return switch (OS_DISTRIBUTION) {
+      case WINDOWS_NT -> "webview.dll";
+      case MACOS -> "libwebview.dylib";
+      default -> "libwebview.so";
+    };
+  }
+
+  private static MethodHandle link(
+      String name, FunctionDescriptor descriptor, Linker.Option... options) {
+    MethodHandle handle = linkOptional(name, descriptor, options);
+    if (handle == null) {
+      throw new UnsatisfiedLinkError("Unable to find symbol: " + name);
+    }
+    return handle;
+  }
+
+  private static @Nullable MethodHandle linkOptional(
+      String name, FunctionDescriptor descriptor, Linker.Option... options) {
+    return Library.LOOKUP
+        .find(name)
+        .map(addr -> LINKER.downcallHandle(addr, descriptor, options))
+        .orElse(null);
+  }
+}
@@ -0,0 +1,136 @@
+package io.avaje.webview;
+
+import module java.base;
+
+/**
+ * The calls in flight that the page can abort, keyed by the call id that the runtime assigns to
+ * a call passed an {@code AbortSignal}.
+ *
+ * <p>On abort the page rejects the Promise itself, then calls {@value #CANCEL}. The reply of the
+ * call is settled as aborted so that the native Promise is released, the abort actions of the
+ * handler run and any later result is dropped.
+ */
+final class InFlightCalls {
+
+  /** The name of the function that the page calls with {@code (callId)} to abort a call. */
+  static final String CANCEL = "__avaje_cancel__";
+
+  private final Map<Long, Call> calls = new ConcurrentHashMap<>();
+
+  /** Track the call, returning the reply that the handler uses. */
+  RpcChannel.Reply open(long callId, RpcChannel.Reply reply) {
+    var call = new Call(callId, reply);
+    calls.put(callId, call);
+    return call;
+  }
+
+  /** Handle {@code [callId]} from the page. */
+  void cancel(String jsonArgs) {
+    if (!jsonArgs.startsWith("[") || !jsonArgs.endsWith("]")) {
+      throw new IllegalArgumentException("Malformed cancel " + jsonArgs);
+    }
+    Call call = calls.get(Long.parseLong(jsonArgs.substring(1, jsonArgs.length() - 1).strip()));
+    if (call != null) {
+      call.aborted();
+    }
+  }
+
+  /** Return the number of calls in flight. */
+  int size() {
+    return calls.size();
+  }
+
+  /** Abort all calls, the webview is closing. */
+  void close() {
+    for (Call call : calls.values()) {
+      call.abortQuietly();
+    }
+  }
+
+  /** The reply of an abortable call, the first of result, error or abort wins. */
+  private final class Call implements RpcChannel.Reply {
+
+    private final long id;
+    private final RpcChannel.Reply reply;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final List<Runnable> onAbort = new ArrayList<>();
+    private boolean aborted;
+
+    Call(long id, RpcChannel.Reply reply) {
+      this.id = id;
+      this.reply = reply;
+    }
+
+    @Override
+    public void result(String json) {
+      if (finish()) {
+        reply.result(json);
+      }
+    }
+
+    @Override
+    public void result(Utf8Text json) {
+      if (finish()) {
+        reply.result(json);
+      }
+    }
+
+    @Override
+    public void error(Throwable error) {
+      if (finish()) {
+        reply.error(error);
+      }
+    }
+
+    @Override
+    public void rejected(String json) {
+      if (finish()) {
+        reply.rejected(json);
+      }
+    }
+
+    @Override
+    public void aborted() {
+      if (finish()) {
+        reply.aborted();
+        runAbortActions();
+      }
+    }
+
+    /** Run the abort actions without settling, the native side is going away. */
+    void abortQuietly() {
+      if (finish()) {
+        runAbortActions();
+      }
+    }
+
+    @Override
+    public void onAbort(Runnable action) {
+      synchronized (this) {
+        if (!aborted) {
+          onAbort.add(action);
+          return;
+        }
+      }
+      action.run();
+    }
+
+    private void runAbortActions() {
+      List<Runnable> actions;
+      synchronized (this) {
+        aborted = true;
+        actions = List.copyOf(onAbort);
+        onAbort.clear();
+      }
+      actions.forEach(Runnable::run);
+    }
+
+    private boolean finish() {
+      if (done.compareAndSet(false, true)) {
+        calls.remove(id, this);
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package io.avaje.webview;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import module java.base;
+
+/**
+ * Marshals Java strings into NUL terminated UTF-8 for downcalls without a native allocation per
+ * call.
+ *
+ * <p>Each platform thread owns a slicing buffer. A downcall takes a {@link #mark()}, slices its
+ * arguments off the buffer and {@link #release(long) releases} back to the mark when the call
+ * returns, so nested calls (a bind handler calling {@code webview_eval} during an upcall) simply
+ * slice further along the buffer.
+ *
+ * <ul>
+ *   <li>The buffer grows on demand up to {@link #MAX_CAPACITY}, strings larger than that are
+ *       allocated one-off and freed on release.
+ *   <li>A buffer that stays mostly unused for {@link #SHRINK_AFTER} calls is halved, so one huge
+ *       payload does not pin memory for the life of the thread.
+ *   <li>Virtual threads do not get a buffer (there can be millions of them), they use a confined
+ *       arena per call.
+ * </ul>
+ */
+final class NativeStrings {
+
+  static final long INITIAL_CAPACITY = 8 * 1024;
+  static final long MAX_CAPACITY = 1024 * 1024;
+  static final int SHRINK_AFTER = 256;
+
+  private static final ThreadLocal<NativeStrings> LOCAL =
+      ThreadLocal.withInitial(() -> new NativeStrings(INITIAL_CAPACITY));
+
+  private static final MethodHandle STRLEN =
+      Linker.nativeLinker()
+          .downcallHandle(
+              Linker.nativeLinker().defaultLookup().find("strlen").orElseThrow(),
+              FunctionDescriptor.of(JAVA_LONG, ADDRESS),
+              Linker.Option.critical(false));
+
+  private MemorySegment buffer;
+  private long offset;
+  private long highWater;
+  private int underUsed;
+  private Arena overflow;
+
+  NativeStrings(long capacity) {
+    this.buffer = capacity == 0 ? MemorySegment.NULL : allocateBuffer(capacity);
+  }
+
+  /** Return the buffer for the current thread. */
+  static NativeStrings local() {
+    return Thread.currentThread().isVirtual() ? new NativeStrings(0) : LOCAL.get();
+  }
+
+  /** Return the length in bytes of a NUL terminated string. */
+  static long strlen(MemorySegment str) {
+    try {
+      return (long) STRLEN.invokeExact(str);
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** A buffer freed by the GC once replaced, or when its thread ends. */
+  private static MemorySegment allocateBuffer(long capacity) {
+    MemorySegment segment = Arena.ofAuto().allocate(capacity);
+    ResourceTracker.trackAuto(segment);
+    return segment;
+  }
+
+  /** The capacity of the retained buffer. */
+  long capacity() {
+    return buffer.byteSize();
+  }
+
+  /** Mark the current position, pass to {@link #release(long)} when the downcall returns. */
+  long mark() {
+    return offset;
+  }
+
+  /** Return the value as a NUL terminated UTF-8 string valid until the next release. */
+  MemorySegment allocate(String value) {
+    // sized to the encoded length rather than the worst case, so large ASCII fits the buffer
+    MemorySegment target = slice(utf8Length(value) + 1);
+    target.setString(0, value);
+    return target;
+  }
+
+  /**
+   * Return the UTF-8 encoded length of the value without encoding it. An unpaired surrogate, which
+   * the encoder replaces with a single byte, is counted as 3 so the result never falls short.
+   */
+  static long utf8Length(String value) {
+    int length = value.length();
+    long size = length;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        continue;
+      }
+      if (c < 0x800) {
+        size += 1;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < length
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        // 4 bytes for the pair of chars
+        size += 2;
+        i++;
+      } else {
+        size += 2;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Return the text as a NUL terminated UTF-8 string valid until the next release. Text that is
+   * already NUL terminated in native memory is returned as is, otherwise the bytes are copied.
+   */
+  MemorySegment allocate(Utf8Text text) {
+    MemorySegment bytes = text.segment();
+    if (text.terminated()) {
+      return bytes;
+    }
+    long length = bytes.byteSize();
+    MemorySegment target = slice(length + 1);
+    MemorySegment.copy(bytes, 0, target, 0, length);
+    target.set(ValueLayout.JAVA_BYTE, length, (byte) 0);
+    return target;
+  }
+
+  private MemorySegment slice(long size) {
+    if (offset + size > buffer.byteSize() && !grow(size)) {
+      if (overflow == null) {
+        overflow = Arena.ofConfined();
+      }
+      return overflow.allocate(size);
+    }
+    MemorySegment slice = buffer.asSlice(offset, size);
+    offset += size;
+    highWater = Math.max(highWater, offset);
+    return slice;
+  }
+
+  /** Release everything sliced since the mark. */
+  void release(long mark) {
+    offset = mark;
+    if (mark != 0) {
+      return;
+    }
+    if (overflow != null) {
+      overflow.close();
+      overflow = null;
+    }
+    long capacity = buffer.byteSize();
+    if (capacity > INITIAL_CAPACITY && highWater < capacity / 4) {
+      if (++underUsed >= SHRINK_AFTER) {
+        buffer = allocateBuffer(capacity / 2);
+        underUsed = 0;
+      }
+    } else {
+      underUsed = 0;
+    }
+    highWater = 0;
+  }
+
+  /**
+   * Grow the buffer to fit the size. Only possible when nothing is sliced from it (a downcall in
+   * flight may still be reading the old buffer) and the size is within the cap.
+   */
+  private boolean grow(long size) {
+    long capacity = buffer.byteSize();
+    if (offset != 0 || capacity == 0 || size > MAX_CAPACITY) {
+      return false;
+    }
+    long newCapacity =
+        Math.min(MAX_CAPACITY, Math.max(capacity * 2, Long.highestOneBit(size) << 1));
+    buffer = allocateBuffer(newCapacity);
+    underUsed = 0;
+    return true;
+  }
+}
@@ -0,0 +1,85 @@
+package io.avaje.webview;
+
+import module java.base;
+
+/**
+ * Limits the rate at which the page calls a bound function, enforced by the function's stub in
+ * the page so that calls over the rate never cross the bridge.
+ *
+ * <p>The calls a policy merges are sent once with the arguments of the latest call, and all of
+ * their Promises settle with its result.
+ *
+ * <pre>{@code
+ * // at most 10 calls per second however often the page scrolls
+ * webview.bind("onScroll", BindOptions.interactive().rate(RatePolicy.perSecond(10)), handler);
+ * }</pre>
+ *
+ * @see BindOptions#rate(RatePolicy)
+ */
+public final class RatePolicy {
+
+  private final String mode;
+  private final long millis;
+
+  private RatePolicy(String mode, long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("The interval must not be negative");
+    }
+    this.mode = mode;
+    this.millis = millis;
+  }
+
+  /**
+   * Send a call once the page has not called the function for the quiet period, e.g. for search
+   * as you type.
+   */
+  public static RatePolicy debounce(Duration quiet) {
+    return new RatePolicy("debounce", quiet.toMillis());
+  }
+
+  /**
+   * Send at most one call per interval. The first call is sent at once, calls within the interval
+   * merge into one trailing call at its end.
+   */
+  public static RatePolicy throttle(Duration interval) {
+    return new RatePolicy("throttle", interval.toMillis());
+  }
+
+  /** Send at most the given calls per second, a {@link #throttle(Duration)}. */
+  public static RatePolicy perSecond(int calls) {
+    if (calls < 1) {
+      throw new IllegalArgumentException("calls must be at least 1");
+    }
+    return new RatePolicy("throttle", (999 + calls) / calls);
+  }
+
+  /**
+   * Send at most one call at a time. Calls made while one is in flight merge into one trailing
+   * call, sent with the latest arguments once it completes.
+   */
+  public static RatePolicy latest() {
+    return new RatePolicy("latest", 0);
+  }
+
+  /** Return the policy as the JSON the stub takes. */
+  String toJson() {
+    return "{\"mode\":\"" + mode + "\",\"ms\":" + millis + "}";
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof RatePolicy policy
+        && mode.equals(policy.mode)
+        && millis == policy.millis;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(mode, millis);
+  }
+
+  @Override
+  public String toString() {
+    return mode + "(" + millis + "ms)";
+  }
+}
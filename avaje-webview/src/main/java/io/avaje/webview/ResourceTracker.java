@@ -0,0 +1,130 @@
+package io.avaje.webview;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+import module java.base;
+import module org.jspecify;
+
+/**
+ * Counts the native resources held by a webview, and by all webviews of the process.
+ *
+ * <p>With leak detection on, via {@link Webview.Builder#leakDetection(boolean)} or {@code
+ * -Davaje.webview.leakDetection=true}, the allocation site of the webview is recorded. Callbacks
+ * still registered once close has released the webview are logged with that site, as is a webview
+ * that becomes unreachable without having been destroyed.
+ *
+ * <p>The unreachable check only fires for a webview that never bound a function: the registry of
+ * the shared bind stub holds the webview strongly from its first binding until close, so a webview
+ * with bindings is never collected without having been closed.
+ */
+final class ResourceTracker {
+
+  private static final System.Logger log = System.getLogger("io.avaje.webview");
+
+  static final boolean LEAK_DETECTION = Boolean.getBoolean("avaje.webview.leakDetection");
+
+  private static final LongAdder WEBVIEWS = new LongAdder();
+  private static final LongAdder UPCALL_STUBS = new LongAdder();
+  private static final LongAdder CALLBACKS = new LongAdder();
+  private static final LongAdder NATIVE_BYTES = new LongAdder();
+
+  private final LongAdder callbacks = new LongAdder();
+  private final LongAdder nativeBytes = new LongAdder();
+  private final AtomicBoolean destroyed = new AtomicBoolean();
+  private final @Nullable AllocationSite site;
+
+  ResourceTracker(Object webview, boolean leakDetection) {
+    this.site = leakDetection ? new AllocationSite("webview " + webview) : null;
+    WEBVIEWS.increment();
+    if (site != null) {
+      Cleanup.CLEANER.register(webview, new Unreachable(destroyed, site));
+    }
+  }
+
+  /** Return the resources of all webviews. */
+  static ResourceUsage total() {
+    return new ResourceUsage(
+        WEBVIEWS.sum(), UPCALL_STUBS.sum(), CALLBACKS.sum(), NATIVE_BYTES.sum());
+  }
+
+  /** An upcall stub was linked, these live for the life of the process. */
+  static void stubLinked() {
+    UPCALL_STUBS.increment();
+  }
+
+  /** Count native memory freed by the GC, the bytes are uncounted once the segment is collected. */
+  static void trackAuto(MemorySegment segment) {
+    long bytes = segment.byteSize();
+    if (bytes > 0) {
+      NATIVE_BYTES.add(bytes);
+      Cleanup.CLEANER.register(segment, () -> NATIVE_BYTES.add(-bytes));
+    }
+  }
+
+  /** Return the resources of this webview. */
+  ResourceUsage usage() {
+    return new ResourceUsage(destroyed.get() ? 0 : 1, 0, callbacks.sum(), nativeBytes.sum());
+  }
+
+  /** A callback was registered with native code, holding the given bytes. */
+  void allocated(long bytes) {
+    callbacks.increment();
+    CALLBACKS.increment();
+    nativeBytes.add(bytes);
+    NATIVE_BYTES.add(bytes);
+  }
+
+  /** A callback registered via {@link #allocated(long)} was released. */
+  void released(long bytes) {
+    callbacks.decrement();
+    CALLBACKS.decrement();
+    nativeBytes.add(-bytes);
+    NATIVE_BYTES.add(-bytes);
+  }
+
+  /** The native webview was destroyed. */
+  void destroyed() {
+    if (destroyed.compareAndSet(false, true)) {
+      WEBVIEWS.decrement();
+    }
+  }
+
+  /**
+   * Called by close once it has released the resources of the webview. With leak detection on,
+   * callbacks that are still registered are logged with the site of the webview.
+   *
+   * @return the number of callbacks still registered
+   */
+  long checkReleased() {
+    long held = callbacks.sum();
+    if (held > 0 && site != null) {
+      log.log(WARNING, held + " native callbacks still registered after close()", site);
+    }
+    return held;
+  }
+
+  /** Records the stack trace of an allocation, only created when leak detection is on. */
+  private static final class AllocationSite extends Throwable {
+
+    AllocationSite(String resource) {
+      super("Allocated " + resource);
+    }
+  }
+
+  /** Runs when a tracked webview is unreachable, it leaked if it was never destroyed. */
+  private record Unreachable(AtomicBoolean destroyed, AllocationSite site) implements Runnable {
+
+    @Override
+    public void run() {
+      if (!destroyed.get()) {
+        log.log(WARNING, "Webview was not destroyed before it became unreachable", site);
+      }
+    }
+  }
+
+  private static final class Cleanup {
+
+    static final Cleaner CLEANER =
+        Cleaner.create(Thread.ofPlatform().daemon().name("avaje-webview-cleaner").factory());
+  }
+}
@@ -0,0 +1,16 @@
+package io.avaje.webview;
+
+/**
+ * Native resources held by a webview, or by all webviews of the process.
+ *
+ * @param webviews webviews created and not yet destroyed
+ * @param upcallStubs upcall stubs linked, these are shared by all webviews so a single webview
+ *     reports 0
+ * @param callbacks Java callbacks registered with native code, bindings and dispatch queues
+ * @param nativeBytes bytes of native memory held, binding names and the per-thread string
+ *     buffers used to marshal downcall arguments. Memory of {@link Utf8Text#encode(String)} is
+ *     owned by the Utf8Text and is not included.
+ * @see Webview#resourceUsage()
+ * @see Webview#totalResourceUsage()
+ */
+public record ResourceUsage(long webviews, long upcallStubs, long callbacks, long nativeBytes) {}
@@ -0,0 +1,647 @@
+package io.avaje.webview;
+
+import module java.base;
+import module org.jspecify;
+
+/**
+ * Routes the calls of all functions bound to a webview through a single native binding.
+ *
+ * <p>Each {@code webview_bind} injects its own init script and takes its own upcall path, so
+ * instead only {@value #ENTRY} is bound natively and the JavaScript stub of each function calls
+ * it as {@code __avaje_rpc__(id, args)}. The id is looked up in a table to find the handler.
+ *
+ * <ul>
+ *   <li>Stubs of functions bound in a burst are installed by one script, added via {@code
+ *       webview_init} for later page loads and evaluated into the current page.
+ *   <li>A name keeps its id for the life of the webview, so an installed stub never calls the
+ *       wrong handler. Unbinding clears the table entry and the stub then rejects, binding the
+ *       name again fills the entry without installing another stub, unless the stub changes, e.g.
+ *       between returning a Promise and an async iterable.
+ *   <li>A stub with a {@link RatePolicy} merges calls over the rate before they are sent, a stub
+ *       with a cache answers from its cache and shares the calls in flight.
+ *   <li>With batching the runtime queues the calls made within a microtask and sends them as one
+ *       call of method {@value #BATCH}, {@code [[id,args],...]}. The response is one array of
+ *       {@code [0,result]} or {@code [1,error]} in call order.
+ *   <li>A call passed an {@code AbortSignal} as its last argument carries a call id, {@code
+ *       [id,args,callId]}. On abort the Promise rejects at once and the runtime calls {@value
+ *       InFlightCalls#CANCEL} with the call id, see {@link InFlightCalls}.
+ *   <li>{@code __avaje__.subscribe(topic, fn)} subscribes to a topic of {@link
+ *       Webview#publish(String, String)}, see {@link Topics}.
+ *   <li>{@code __avaje__.dom(commands)} applies a {@link DomBatch} in an animation frame.
+ * </ul>
+ */
+final class RpcChannel {
+
+  /** The name of the native binding. */
+  static final String ENTRY = "__avaje_rpc__";
+
+  /** The method id of a batch of calls. */
+  static final int BATCH = 0;
+
+  /** The client runtime, installed ahead of the first stubs. */
+  static final String RUNTIME =
+      """
+      (function () {
+        if (window.__avaje__) return;
+        var queue = null;
+        var rpc = function (id, args, cid) {
+          return cid ? window.__avaje_rpc__(id, args, cid) : window.__avaje_rpc__(id, args);
+        };
+        var avaje = window.__avaje__ = {
+          batch: false,
+          cids: 0,
+          call: function (id, args, cid) {
+            if (!avaje.batch) return rpc(id, args, cid);
+            return new Promise(function (resolve, reject) {
+              if (!queue) {
+                queue = [];
+                queueMicrotask(avaje.flush);
+              }
+              queue.push({ id: id, args: args, cid: cid, resolve: resolve, reject: reject });
+            });
+          },
+          flush: function () {
+            var calls = queue;
+            queue = null;
+            if (calls.length === 1) {
+              var c = calls[0];
+              rpc(c.id, c.args, c.cid).then(c.resolve, c.reject);
+              return;
+            }
+            var batch = calls.map(function (c) {
+              return c.cid ? [c.id, c.args, c.cid] : [c.id, c.args];
+            });
+            window.__avaje_rpc__(0, batch).then(
+              function (results) {
+                results.forEach(function (r, i) {
+                  (r[0] ? calls[i].reject : calls[i].resolve)(r[1]);
+                });
+              },
+              function (e) {
+                calls.forEach(function (c) { c.reject(e); });
+              });
+          },
+          stub: function (id, options) {
+            var send = function (args) {
+              return avaje.call(id, args);
+            };
+            if (options && options.rate) send = avaje.limit(options.rate, send);
+            if (options && options.ttl !== undefined) send = avaje.cached(id, options.ttl, send);
+            return function () {
+              var args = Array.prototype.slice.call(arguments);
+              var last = args[args.length - 1];
+              if (typeof AbortSignal !== "undefined" && last instanceof AbortSignal) {
+                args.pop();
+                if (!options) return avaje.abortable(id, args, last);
+                // the call may be shared by other callers, so an abort only rejects this one
+                if (last.aborted) return Promise.reject(last.reason);
+                return avaje.detach(send(args), last);
+              }
+              return send(args);
+            };
+          },
+          detach: function (promise, signal) {
+            return new Promise(function (resolve, reject) {
+              var abort = function () {
+                reject(signal.reason);
+              };
+              signal.addEventListener("abort", abort, { once: true });
+              promise.then(resolve, reject).finally(function () {
+                signal.removeEventListener("abort", abort);
+              });
+            });
+          },
+          caches: {},
+          cached: function (id, ttl, send) {
+            var cache = avaje.caches[id] = {};
+            return function (args) {
+              var key = JSON.stringify(args);
+              var entry = cache[key];
+              if (entry && (entry.expires === 0 || entry.expires > Date.now())) {
+                return entry.promise;
+              }
+              entry = cache[key] = { expires: 0 };
+              entry.promise = send(args).then(
+                function (r) {
+                  if (cache[key] === entry) {
+                    if (ttl > 0) entry.expires = Date.now() + ttl;
+                    else delete cache[key];
+                  }
+                  return r;
+                },
+                function (e) {
+                  if (cache[key] === entry) delete cache[key];
+                  throw e;
+                });
+              return entry.promise;
+            };
+          },
+          invalidate: function (id, json) {
+            var cache = avaje.caches[id];
+            if (!cache) return;
+            if (json === undefined) {
+              for (var k in cache) delete cache[k];
+              return;
+            }
+            try {
+              // re-serialized so that the key matches however the JSON is formatted
+              delete cache[JSON.stringify(JSON.parse(json))];
+            } catch (e) {
+              console.error('[Webview]', 'Invalid arguments to invalidate:', json, e);
+            }
+          },
+          limit: function (rate, send) {
+            var waiting = [], latest = null, timer = null, busy = false, last = 0;
+            var fire = function () {
+              var settle = waiting, args = latest;
+              waiting = [];
+              latest = null;
+              last = Date.now();
+              busy = true;
+              var done = function () {
+                busy = false;
+                if (rate.mode === "latest" && waiting.length) fire();
+              };
+              send(args).then(
+                function (r) { settle.forEach(function (w) { w.resolve(r); }); done(); },
+                function (e) { settle.forEach(function (w) { w.reject(e); }); done(); });
+            };
+            var later = function (ms) {
+              timer = setTimeout(function () { timer = null; fire(); }, ms);
+            };
+            return function (args) {
+              return new Promise(function (resolve, reject) {
+                waiting.push({ resolve: resolve, reject: reject });
+                latest = args;
+                if (rate.mode === "debounce") {
+                  clearTimeout(timer);
+                  later(rate.ms);
+                } else if (rate.mode === "throttle") {
+                  if (timer) return;
+                  var wait = last + rate.ms - Date.now();
+                  wait > 0 ? later(wait) : fire();
+                } else if (!busy) {
+                  fire();
+                }
+              });
+            };
+          },
+          abortable: function (id, args, signal) {
+            if (signal.aborted) return Promise.reject(signal.reason);
+            var cid = ++avaje.cids;
+            return new Promise(function (resolve, reject) {
+              var abort = function () {
+                reject(signal.reason);
+                // only async bindings can be cancelled, the others have returned already
+                if (window.__avaje_cancel__) window.__avaje_cancel__(cid);
+              };
+              signal.addEventListener("abort", abort, { once: true });
+              avaje.call(id, args, cid).then(resolve, reject).finally(function () {
+                signal.removeEventListener("abort", abort);
+              });
+            });
+          },
+          streams: {},
+          cancelled: {},
+          opened: false,
+          stream: function (id) {
+            return function () {
+              if (!avaje.opened) {
+                avaje.opened = true;
+                // a new page, the streams of the page before it are cancelled
+                window.__avaje_stream__(0, 0);
+              }
+              return avaje.iterate(avaje.call(id, Array.prototype.slice.call(arguments)));
+            };
+          },
+          cancel: function (sid) {
+            avaje.cancelled[sid] = true;
+            window.__avaje_stream__(sid, 0).finally(function () {
+              // nothing is pushed to the stream after the acknowledgement
+              delete avaje.cancelled[sid];
+            });
+          },
+          state: function (sid) {
+            return avaje.streams[sid] || (avaje.streams[sid] = {
+              items: [], done: false, failed: false, error: null, waiter: null, taken: 0
+            });
+          },
+          push: function (sid, items, done, error) {
+            if (avaje.cancelled[sid]) return;
+            if (!avaje.opened) {
+              // a stream of the page before a reload
+              if (!done) avaje.cancel(sid);
+              return;
+            }
+            var s = avaje.state(sid);
+            Array.prototype.push.apply(s.items, items);
+            s.done = !!done;
+            if (arguments.length > 3) {
+              s.failed = true;
+              s.error = error;
+            }
+            if (s.waiter) {
+              var waiter = s.waiter;
+              s.waiter = null;
+              waiter();
+            }
+          },
+          iterate: function (opened) {
+            var it = {
+              next: function () {
+                return opened.then(function (sid) {
+                  var s = avaje.state(sid);
+                  return new Promise(function (resolve, reject) {
+                    (function take() {
+                      if (s.items.length) {
+                        if (++s.taken === 8) {
+                          s.taken = 0;
+                          window.__avaje_stream__(sid, 8);
+                        }
+                        resolve({ value: s.items.shift(), done: false });
+                      } else if (s.done) {
+                        delete avaje.streams[sid];
+                        s.failed ? reject(s.error) : resolve({ value: undefined, done: true });
+                      } else {
+                        s.waiter = take;
+                      }
+                    })();
+                  });
+                });
+              },
+              return: function () {
+                return opened.then(function (sid) {
+                  var s = avaje.streams[sid];
+                  delete avaje.streams[sid];
+                  if (!s || !s.done) avaje.cancel(sid);
+                  return { value: undefined, done: true };
+                });
+              }
+            };
+            it[Symbol.asyncIterator] = function () { return it; };
+            return it;
+          },
+          topics: {},
+          synced: false,
+          subscribe: function (topic, fn) {
+            var subs = avaje.topics[topic];
+            if (!subs) {
+              subs = avaje.topics[topic] = [];
+              avaje.announce(topic, true);
+            }
+            subs.push(fn);
+            return function () {
+              var i = subs.indexOf(fn);
+              if (i < 0) return;
+              subs.splice(i, 1);
+              if (!subs.length && avaje.topics[topic] === subs) {
+                delete avaje.topics[topic];
+                avaje.announce(topic, false);
+              }
+            };
+          },
+          announce: function (topic, on) {
+            if (!window.__avaje_topic__) return;
+            if (!avaje.synced) return avaje.sync();
+            window.__avaje_topic__(topic, on);
+          },
+          sync: function () {
+            avaje.synced = true;
+            window.__avaje_topic__(null, false);
+            for (var topic in avaje.topics) window.__avaje_topic__(topic, true);
+            window.__avaje_topic__(null, true);
+          },
+          deliver: function (values) {
+            for (var topic in values) {
+              var subs = avaje.topics[topic];
+              if (!subs) continue;
+              subs.slice().forEach(function (fn) {
+                try {
+                  fn(values[topic]);
+                } catch (e) {
+                  console.error('[Webview]', 'An error occurred in a subscriber of', topic, e);
+                }
+              });
+            }
+          },
+          dom: function (commands) {
+            return new Promise(function (resolve, reject) {
+              requestAnimationFrame(function () {
+                try {
+                  // reads first, writes do not force a layout before them
+                  var results = [];
+                  commands.forEach(function (c) {
+                    if (c[0] < 4) return;
+                    var el = document.querySelector(c[1]), value = null;
+                    if (c[0] === 4 && el) {
+                      var r = el.getBoundingClientRect();
+                      value = { x: r.x, y: r.y, width: r.width, height: r.height };
+                    } else if (el && el[c[2]] !== undefined) {
+                      value = el[c[2]];
+                    }
+                    // each result as JSON text, Java only splits the array of strings
+                    results.push(JSON.stringify(value));
+                  });
+                  commands.forEach(function (c) {
+                    if (c[0] > 3) return;
+                    document.querySelectorAll(c[1]).forEach(function (el) {
+                      if (c[0] === 0) el.textContent = c[2];
+                      else if (c[0] === 1 && c[3] === null) el.removeAttribute(c[2]);
+                      else if (c[0] === 1) el.setAttribute(c[2], c[3]);
+                      else if (c[0] === 2) el.classList.toggle(c[2], c[3]);
+                      else el.insertAdjacentHTML(c[2], c[3]);
+                    });
+                  });
+                  resolve(results);
+                } catch (e) {
+                  reject(e);
+                }
+              });
+            });
+          }
+        };
+      })();
+      """;
+
+  private final boolean batch;
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final List<String> names = new ArrayList<>();
+  private final List<Integer> pending = new ArrayList<>();
+  private volatile @Nullable Method[] methods = new Method[16];
+  /** The stub installed or pending for each id, indexed by id - 1. */
+  private final List<String> stubs = new ArrayList<>();
+  /** The ids whose stub has been installed at least once. */
+  private final BitSet installed = new BitSet();
+  private boolean runtimeInstalled;
+
+  /**
+   * @param batch true to batch the calls made within a microtask
+   */
+  RpcChannel(boolean batch) {
+    this.batch = batch;
+  }
+
+  /**
+   * Register the handler for the name, replacing any previous handler.
+   *
+   * @param stream true if the function returns an async iterable, see {@link BindStreams}
+   * @param options the options that the stub enforces, the rate and cache
+   * @return true if the name is new, or its stub changes, and its stub needs to be installed
+   */
+  synchronized boolean register(
+      String name, Handler handler, boolean stream, BindOptions options) {
+    Integer existing = ids.get(name);
+    int id = existing != null ? existing : names.size() + 1;
+    String stubJson = options.stubJson();
+    String stub =
+        stream
+            ? "a.stream(" + id + ")"
+            : "a.stub(" + id + (stubJson.isEmpty() ? "" : ", " + stubJson) + ")";
+    boolean install;
+    if (existing == null) {
+      ids.put(name, id);
+      names.add(name);
+      stubs.add(stub);
+      install = true;
+    } else {
+      install = !stubs.get(id - 1).equals(stub);
+      stubs.set(id - 1, stub);
+    }
+    if (install && !pending.contains(id)) {
+      pending.add(id);
+    }
+    var current = methods;
+    if (id >= current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+    } else {
+      current = current.clone();
+    }
+    current[id] = new Method(id, name, handler);
+    // publish a new array so that lookups need no lock
+    methods = current;
+    return install;
+  }
+
+  /** Remove the handler for the name, returning false if it was not bound. */
+  synchronized boolean unregister(String name) {
+    Integer id = ids.get(name);
+    if (id == null || methods[id] == null) {
+      return false;
+    }
+    var current = methods.clone();
+    current[id] = null;
+    methods = current;
+    return true;
+  }
+
+  /** Return the id of the name, or -1 if it was never bound. */
+  synchronized int id(String name) {
+    Integer id = ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  /** Return the method for the id, or null if not bound. */
+  @Nullable
+  Method method(int id) {
+    var current = methods;
+    return id > 0 && id < current.length ? current[id] : null;
+  }
+
+  /** Return the id of the name if its stub has been installed, or -1. */
+  synchronized int stubId(String name) {
+    Integer id = ids.get(name);
+    return id != null && installed.get(id) ? id : -1;
+  }
+
+  /** Return the names whose stubs have been installed. */
+  synchronized Set<String> stubNames() {
+    var stubNames = new HashSet<String>();
+    installed.stream().forEach(id -> stubNames.add(names.get(id - 1)));
+    return stubNames;
+  }
+
+  /** Remove all handlers. */
+  synchronized void clear() {
+    methods = new Method[methods.length];
+  }
+
+  /**
+   * Return the script that installs the stubs registered since the last call, preceded by the
+   * runtime the first time, or null if there is nothing to install.
+   */
+  synchronized @Nullable String installScript() {
+    if (pending.isEmpty()) {
+      return null;
+    }
+    var script = new StringBuilder(64 + pending.size() * 48);
+    if (!runtimeInstalled) {
+      script.append(RUNTIME);
+      if (batch) {
+        script.append("window.__avaje__.batch = true;\n");
+      }
+      runtimeInstalled = true;
+    }
+    script.append("(function (a) {\n");
+    for (int id : pending) {
+      installed.set(id);
+      script
+          .append("  window[\"")
+          .append(WebviewUtil.jsonEscape(names.get(id - 1)))
+          .append("\"] = ")
+          .append(stubs.get(id - 1))
+          .append(";\n");
+    }
+    script.append("})(window.__avaje__);\n");
+    pending.clear();
+    return script.toString();
+  }
+
+  /**
+   * Parse the method id of a request to the entry, the JSON array {@code [id,[args...]]}.
+   *
+   * @return the id, or -1 if the request is malformed
+   */
+  static int id(MemorySegment request) {
+    long size = request.byteSize();
+    if (size < 5 || request.get(ValueLayout.JAVA_BYTE, 0) != '[') {
+      return -1;
+    }
+    int id = 0;
+    for (long i = 1; i < size; i++) {
+      byte b = request.get(ValueLayout.JAVA_BYTE, i);
+      if (b == ',') {
+        return i > 1 ? id : -1;
+      }
+      if (b < '0' || b > '9' || id > (Integer.MAX_VALUE - 9) / 10) {
+        return -1;
+      }
+      id = id * 10 + (b - '0');
+    }
+    return -1;
+  }
+
+  /** Return the arguments of a request with a valid {@link #id(MemorySegment)}. */
+  static MemorySegment args(MemorySegment request) {
+    long start = 1;
+    while (request.get(ValueLayout.JAVA_BYTE, start) != ',') {
+      start++;
+    }
+    start++;
+    long end = request.byteSize() - 1;
+    long callIdStart = callIdStart(request);
+    if (callIdStart > 0) {
+      end = callIdStart - 1;
+    }
+    return request.asSlice(start, end - start);
+  }
+
+  /**
+   * Return the call id of a request that can be aborted, {@code [id,args,callId]}.
+   *
+   * @return the call id, or 0 if the request has none
+   */
+  static long callId(MemorySegment request) {
+    long start = callIdStart(request);
+    if (start < 0) {
+      return 0;
+    }
+    long callId = 0;
+    for (long i = start; i < request.byteSize() - 1; i++) {
+      callId = callId * 10 + (request.get(ValueLayout.JAVA_BYTE, i) - '0');
+    }
+    return callId;
+  }
+
+  /** The offset of the digits of the call id, they follow the {@code ],} that ends the args. */
+  private static long callIdStart(MemorySegment request) {
+    long end = request.byteSize() - 1;
+    long i = end - 1;
+    while (i > end - 18 && i > 2) {
+      byte b = request.get(ValueLayout.JAVA_BYTE, i);
+      if (b < '0' || b > '9') {
+        break;
+      }
+      i--;
+    }
+    boolean digits = i < end - 1;
+    if (digits
+        && request.get(ValueLayout.JAVA_BYTE, i) == ','
+        && request.get(ValueLayout.JAVA_BYTE, i - 1) == ']') {
+      return i + 1;
+    }
+    return -1;
+  }
+
+  /**
+   * Split the arguments of a {@value #BATCH} call, {@code [[id,args],...]}, into the requests of
+   * the individual calls.
+   *
+   * @return the requests, or null if the batch is malformed
+   */
+  static @Nullable List<MemorySegment> batch(MemorySegment args) {
+    long size = args.byteSize();
+    if (size < 2 || args.get(ValueLayout.JAVA_BYTE, 0) != '[') {
+      return null;
+    }
+    var calls = new ArrayList<MemorySegment>();
+    int depth = 0;
+    long start = 0;
+    boolean string = false;
+    for (long i = 0; i < size; i++) {
+      byte b = args.get(ValueLayout.JAVA_BYTE, i);
+      if (string) {
+        if (b == '\\') {
+          i++;
+        } else if (b == '"') {
+          string = false;
+        }
+      } else if (b == '"') {
+        string = true;
+      } else if (b == '[' || b == '{') {
+        if (++depth == 2) {
+          start = i;
+        }
+      } else if (b == ']' || b == '}') {
+        if (--depth == 1) {
+          calls.add(args.asSlice(start, i + 1 - start));
+        }
+      }
+    }
+    return depth == 0 ? calls : null;
+  }
+
+  /** Handles a call of a bound function. */
+  @FunctionalInterface
+  interface Handler {
+    /**
+     * @param args The JSON array of arguments, UTF-8 bytes valid for the duration of the call
+     * @param reply Takes the result, once, on any thread
+     */
+    void call(MemorySegment args, Reply reply);
+  }
+
+  /** Returns the result of a call to JavaScript, alone or as part of a batch. */
+  interface Reply {
+
+    /** Resolve the call with the JSON result. */
+    void result(String json);
+
+    /** Resolve the call with the UTF-8 encoded JSON result. */
+    void result(Utf8Text json);
+
+    /** Reject the call with the stack trace of the error. */
+    void error(Throwable error);
+
+    /** Reject the call with the JSON error as is, without a stack trace or logging it. */
+    void rejected(String json);
+
+    /** Settle a call that the page has aborted, the page has already rejected its Promise. */
+    void aborted();
+
+    /** Run the action when the page aborts the call, only calls with a call id can be aborted. */
+    default void onAbort(Runnable action) {}
+  }
+
+  /** A bound function. */
+  record Method(int id, String name, Handler handler) {}
+}
@@ -0,0 +1,19 @@
+package io.avaje.webview;
+
+import module java.base;
+import module jdk.jfr;
+
+/** JFR event spanning the webview event loop, committed when the loop stops. */
+@Name("io.avaje.webview.Run")
+@Label("Webview Run")
+@Category({"Avaje", "Webview"})
+@Description("The webview event loop, from webview_run until it returns")
+final class RunEvent extends Event {
+
+  /** Marks the start of the loop, as a running loop has no {@link RunEvent} yet. */
+  @Name("io.avaje.webview.RunStart")
+  @Label("Webview Run Start")
+  @Category({"Avaje", "Webview"})
+  @Description("The webview event loop started")
+  static final class Start extends Event {}
+}
@@ -0,0 +1,89 @@
+package io.avaje.webview;
+
+import module java.base;
+
+/**
+ * The scripts of {@link Webview#registerScript(String, String)}, installed once and invoked by id.
+ *
+ * <ul>
+ *   <li>Each name gets an id for the life of the webview, registering the name again replaces
+ *       the function of the id. Registering the same source again installs nothing.
+ *   <li>The {@code window.__avaje_invoke__(id, args)} runner is installed once, ahead of the
+ *       first script. The name of a script is declared by its own small script, and the function
+ *       is defined by another in a try/catch that logs the name, so a source that fails to
+ *       install only loses its own function.
+ *   <li>An invoke sends only the id and the arguments, errors are logged to the console with the
+ *       name of the script, including the rejection of a returned Promise and the invoke of a
+ *       function that failed to install.
+ * </ul>
+ */
+final class ScriptRegistry {
+
+  private static final String RUNNER =
+      """
+      window.__avaje_scripts__ = window.__avaje_scripts__ || {};
+      window.__avaje_invoke__ = window.__avaje_invoke__ || function (id, args) {
+        var script = window.__avaje_scripts__[id];
+        var report = function (e) {
+          console.error('[Webview]', 'An error occurred whilst invoking script:',
+            script ? script.name : id, e);
+        };
+        try {
+          if (!script || !script.fn) throw new Error('The script is not installed');
+          var result = script.fn.apply(null, args);
+          if (result && typeof result.then === "function") result.then(null, report);
+        } catch (e) {
+          report(e);
+        }
+      };
+      """;
+
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  private final Map<String, String> sources = new HashMap<>();
+  private boolean runnerInstalled;
+
+  /**
+   * Register the script, returning the scripts that install it in order, none if the name is
+   * already registered with the same source.
+   *
+   * @param source a JavaScript function expression
+   * @param utf8 true to pass non-ASCII chars of the name through, false to escape them
+   */
+  synchronized List<String> register(String name, String source, boolean utf8) {
+    if (source.equals(sources.put(name, source))) {
+      return List.of();
+    }
+    var scripts = new ArrayList<String>(3);
+    if (!runnerInstalled) {
+      runnerInstalled = true;
+      scripts.add(RUNNER);
+    }
+    String quotedName = '"' + WebviewUtil.jsonEscape(name, utf8) + '"';
+    Integer id = ids.get(name);
+    if (id == null) {
+      id = ids.size() + 1;
+      ids.put(name, id);
+      scripts.add("window.__avaje_scripts__[" + id + "] = { name: " + quotedName + " };");
+    }
+    var define = new StringBuilder(source.length() + 160).append("try {\n");
+    define.append("window.__avaje_scripts__[").append(id).append("].fn = (").append(source);
+    define.append("\n);\n} catch (e) {\n");
+    define.append("console.error('[Webview]', 'An error occurred whilst registering script:', ");
+    scripts.add(define.append(quotedName).append(", e);\n}").toString());
+    return scripts;
+  }
+
+  /**
+   * Return the script that invokes the registered script with the arguments.
+   *
+   * @param jsonArgs the arguments as a JSON array, made safe for a C string
+   * @throws IllegalArgumentException if no script is registered with the name
+   */
+  String invoke(String name, String jsonArgs) {
+    Integer id = ids.get(name);
+    if (id == null) {
+      throw new IllegalArgumentException("No script registered as " + name);
+    }
+    return "window.__avaje_invoke__(" + id + "," + jsonArgs + ");";
+  }
+}
@@ -0,0 +1,140 @@
+package io.avaje.webview;
+
+import static java.lang.System.Logger.Level.ERROR;
+
+import module java.base;
+
+/**
+ * The topics of {@link Webview#publish(String, String)} and their subscriptions in the page.
+ *
+ * <ul>
+ *   <li>The page reports the topics it subscribes to through {@value #CONTROL} as {@code
+ *       [topic,true]} and {@code [topic,false]}. A new page reports all of its subscriptions
+ *       between {@code [null,false]} and {@code [null,true]}.
+ *   <li>Until the page has reported its subscriptions the latest value of every topic is kept,
+ *       the page may have subscribed before the function was installed. After that values
+ *       published to other topics are dropped, a supplied value is not serialized.
+ *   <li>Topics are conflated, only the latest value published to a topic since the last delivery
+ *       is delivered.
+ *   <li>The values of all topics are delivered by one {@code webview_eval} per UI tick.
+ * </ul>
+ */
+final class Topics {
+
+  private static final System.Logger log = System.getLogger("io.avaje.webview");
+
+  /** The name of the function that the page reports its subscriptions to. */
+  static final String CONTROL = "__avaje_topic__";
+
+  /** Asks the page to report all of its subscriptions, once the control function is installed. */
+  static final String SYNC = "window.__avaje__ && window.__avaje__.sync();";
+
+  private final DispatchQueue dispatcher;
+  private final Consumer<String> eval;
+  private final boolean utf8;
+  private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+  /** The latest value of each topic, a JSON {@link String} or a {@link Supplier} of one. */
+  private final Map<String, Object> pending = new ConcurrentHashMap<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  /** True once the page has reported all of its subscriptions. */
+  private volatile boolean synced;
+  private volatile boolean closed;
+
+  /**
+   * @param dispatcher runs the deliveries on the UI thread
+   * @param eval evaluates a script on the UI thread
+   * @param utf8 true to pass non-ASCII chars of the values through, false to escape them
+   */
+  Topics(DispatchQueue dispatcher, Consumer<String> eval, boolean utf8) {
+    this.dispatcher = dispatcher;
+    this.eval = eval;
+    this.utf8 = utf8;
+  }
+
+  /** Publish a JSON value, or a supplier of one, replacing the value pending for the topic. */
+  void publish(String topic, Object value) {
+    if (closed || synced && !subscribed.contains(topic)) {
+      return;
+    }
+    pending.put(topic, value);
+    if (subscribed.contains(topic)) {
+      schedule();
+    }
+  }
+
+  /** Handle {@code [topic,subscribed]} from the page. */
+  void control(String jsonArgs) {
+    int comma = jsonArgs.lastIndexOf(',');
+    if (comma < 0 || !jsonArgs.startsWith("[") || !jsonArgs.endsWith("]")) {
+      throw new IllegalArgumentException("Malformed topic subscription");
+    }
+    String topic = jsonArgs.substring(1, comma).strip();
+    boolean on = jsonArgs.substring(comma + 1, jsonArgs.length() - 1).strip().equals("true");
+    if (topic.equals("null") && !on) {
+      // a new page, its subscriptions follow
+      synced = false;
+      subscribed.clear();
+    } else if (topic.equals("null")) {
+      // the values kept for the topics that the page does not subscribe to are dropped
+      synced = true;
+      pending.keySet().retainAll(subscribed);
+      schedule();
+    } else if (on) {
+      String name = WebviewUtil.jsonUnquote(topic);
+      subscribed.add(name);
+      if (pending.containsKey(name)) {
+        // a value published before the page reported the subscription
+        schedule();
+      }
+    } else {
+      String name = WebviewUtil.jsonUnquote(topic);
+      subscribed.remove(name);
+      pending.remove(name);
+    }
+  }
+
+  /** Stop delivering, the webview is closing. */
+  void close() {
+    closed = true;
+    subscribed.clear();
+    pending.clear();
+  }
+
+  private void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      dispatcher.post(this::flush);
+    }
+  }
+
+  /** Runs on the UI thread, delivers the latest value of each topic published since the last. */
+  private void flush() {
+    scheduled.set(false);
+    var script = new StringBuilder(64).append("window.__avaje__.deliver({");
+    int delivered = 0;
+    for (String topic : pending.keySet()) {
+      if (!subscribed.contains(topic)) {
+        if (synced) {
+          pending.remove(topic);
+        }
+        continue;
+      }
+      Object value = pending.remove(topic);
+      if (value == null) {
+        continue;
+      }
+      String json;
+      try {
+        json = value instanceof Supplier<?> supplier ? (String) supplier.get() : (String) value;
+      } catch (Throwable e) {
+        log.log(ERROR, "Error supplying the value of topic " + topic, e);
+        continue;
+      }
+      script.append(delivered++ == 0 ? "\"" : ",\"");
+      WebviewUtil.jsonEscape(topic, utf8, script).append("\":");
+      WebviewUtil.forceSafeChars(json == null ? "null" : json, utf8, script);
+    }
+    if (delivered > 0 && !closed) {
+      eval.accept(script.append("});").toString());
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package io.avaje.webview;
+
+import module java.base;
+
+/**
+ * UTF-8 text that is passed to the webview without being re-encoded.
+ *
+ * <p>Use {@link #encode(String)} for scripts, HTML and results that are sent repeatedly. The text
+ * is encoded once into NUL terminated native memory and is then handed to the native webview as
+ * is, with no copy per call.
+ *
+ * <p>Use the {@code wrap} methods for bytes that are already UTF-8 encoded ({@code byte[]}, {@link
+ * ByteBuffer} or {@link MemorySegment}). These are not copied on wrapping, they are copied once
+ * (a memory copy, no encoding) into a native buffer when passed to the webview.
+ *
+ * <pre>{@code
+ * static final Utf8Text REFRESH = Utf8Text.encode("dashboard.refresh()");
+ *
+ * webview.eval(REFRESH);
+ * webview.bindEncoded("__save__", jsonArgs -> {
+ *   save(jsonArgs);
+ *   return Utf8Text.OK;
+ * });
+ * }</pre>
+ */
+public final class Utf8Text {
+
+  /** The JSON {@code null} literal. */
+  public static final Utf8Text NULL = encode("null");
+
+  /** The JSON {@code true} literal. */
+  public static final Utf8Text TRUE = encode("true");
+
+  /** The JSON {@code false} literal. */
+  public static final Utf8Text FALSE = encode("false");
+
+  /** The JSON string {@code "ok"}. */
+  public static final Utf8Text OK = encode("\"ok\"");
+
+  private final MemorySegment bytes;
+  private final boolean terminated;
+
+  private Utf8Text(MemorySegment bytes, boolean terminated) {
+    this.bytes = bytes;
+    this.terminated = terminated;
+  }
+
+  /**
+   * Encode the value once into native memory, for text that is passed to the webview repeatedly.
+   * The memory is released when the returned instance is no longer reachable.
+   *
+   * @param value the text to encode
+   * @return the encoded text
+   */
+  public static Utf8Text encode(String value) {
+    MemorySegment segment = Arena.ofAuto().allocateFrom(value);
+    return new Utf8Text(segment.asSlice(0, segment.byteSize() - 1), true);
+  }
+
+  /**
+   * Wrap UTF-8 encoded bytes without copying them.
+   *
+   * @param utf8 UTF-8 encoded bytes, the array must not be modified while in use
+   * @return the wrapped text
+   */
+  public static Utf8Text wrap(byte[] utf8) {
+    return new Utf8Text(MemorySegment.ofArray(utf8), false);
+  }
+
+  /**
+   * Wrap the remaining UTF-8 encoded bytes of the buffer (position to limit) without copying them.
+   *
+   * @param utf8 UTF-8 encoded bytes, the buffer must not be modified while in use
+   * @return the wrapped text
+   */
+  public static Utf8Text wrap(ByteBuffer utf8) {
+    return new Utf8Text(MemorySegment.ofBuffer(utf8), false);
+  }
+
+  /**
+   * Wrap UTF-8 encoded bytes without copying them. The segment holds the text only, without a NUL
+   * terminator.
+   *
+   * @param utf8 UTF-8 encoded bytes, the segment must remain alive while in use
+   * @return the wrapped text
+   */
+  public static Utf8Text wrap(MemorySegment utf8) {
+    return new Utf8Text(utf8, false);
+  }
+
+  /** Return the encoded bytes (excluding any NUL terminator) as a read only segment. */
+  public MemorySegment bytes() {
+    return bytes.asReadOnly();
+  }
+
+  /** Return the size of the encoded text in bytes. */
+  public long byteSize() {
+    return bytes.byteSize();
+  }
+
+  /**
+   * Return true if the bytes live in native memory followed by a NUL terminator, in which case
+   * they are passed to the webview as is.
+   */
+  boolean terminated() {
+    return terminated;
+  }
+
+  /** The raw segment, used by the bridge to pass or copy the bytes. */
+  MemorySegment segment() {
+    return bytes;
+  }
+
+  /** Decode the text. */
+  @Override
+  public String toString() {
+    return new String(bytes.toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+  }
+}
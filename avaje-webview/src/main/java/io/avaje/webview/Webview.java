@@ -24,6 +24,9 @@ import module java.base;
 
 import module org.jspecify;
 
+import io.avaje.webview.spi.FakeWebviewNative;
+import io.avaje.webview.spi.WebviewNative;
+
 /**
  * Provides a high-level interface for creating and managing a native Webview window.
  *
@@ -59,6 +62,16 @@ public interface Webview extends Closeable, Runnable {
    */
   void setHTML(@Nullable String html);
 
+  /**
+   * Sets the HTML content of the webview directly from UTF-8 encoded content.
+   *
+   * <p>Content created via {@link Utf8Text#encode(String)} is passed to the native webview without
+   * being encoded or copied, use this for HTML that is set repeatedly.
+   *
+   * @param html the UTF-8 encoded HTML to render
+   */
+  void setHTML(@NonNull Utf8Text html);
+
   /**
    * Navigates the webview to the specified URL.
    *
@@ -128,9 +141,56 @@ public interface Webview extends Closeable, Runnable {
    * Evaluates the provided JavaScript string immediately in the current context.
    *
    * @param script the JavaScript source code to execute
+   * @see Builder#coalesceEvals(int, Duration)
    */
   void eval(@NonNull String script);
 
+  /**
+   * Evaluates the provided UTF-8 encoded JavaScript immediately in the current context.
+   *
+   * <p>Scripts created via {@link Utf8Text#encode(String)} are passed to the native webview
+   * without being encoded or copied, use this for scripts that are sent repeatedly.
+   *
+   * @param script the UTF-8 encoded JavaScript source code to execute
+   * @implNote Unlike {@link #eval(String)} the script is evaluated as is, it is not wrapped to log
+   *     errors to the console.
+   */
+  void eval(@NonNull Utf8Text script);
+
+  /**
+   * Evaluates JavaScript and returns its value.
+   *
+   * <p>The script is evaluated as a global script, its value is that of its last expression and a
+   * Promise is awaited. The future completes with the value serialized as JSON, {@code null} for
+   * {@code undefined}, or fails with a {@link WebviewEvalException} if the script throws. It fails
+   * with a {@link TimeoutException} after 30 seconds.
+   *
+   * <p>The script runs via an indirect {@code eval}, which a page Content Security Policy without
+   * {@code 'unsafe-eval'} blocks. On such a page every call fails with a {@link
+   * WebviewEvalException}.
+   *
+   * <pre>{@code
+   * webview.evalForResult("document.title").thenAccept(title -> ...);
+   * }</pre>
+   *
+   * @param script the JavaScript source code to evaluate
+   * @return the JSON value of the script
+   * @see #evalForResult(String, Duration)
+   */
+  CompletableFuture<String> evalForResult(@NonNull String script);
+
+  /**
+   * Evaluates JavaScript and returns its value, failing with a {@link TimeoutException} after the
+   * timeout. Any number of evals may be outstanding, they share one internal function that the
+   * page reports results to.
+   *
+   * @param script the JavaScript source code to evaluate
+   * @param timeout how long to wait for the value
+   * @return the JSON value of the script
+   * @see #evalForResult(String)
+   */
+  CompletableFuture<String> evalForResult(@NonNull String script, @NonNull Duration timeout);
+
   /**
    * Binds a Java callback to a global JavaScript function.
    *
@@ -146,6 +206,216 @@ public interface Webview extends Closeable, Runnable {
    */
   void bind(@NonNull String name, @NonNull WebviewBindCallback handler);
 
+  /**
+   * Binds a Java callback to a global JavaScript function with options, of which only the {@link
+   * BindOptions#rate(RatePolicy) rate} applies as the handler runs on the UI thread.
+   *
+   * <p>The rate is enforced in the page, a {@code scroll} or {@code input} handler calling the
+   * function on every event crosses the bridge at most at the rate.
+   *
+   * @param name the name of the function in the JavaScript {@code window} object
+   * @param options the options, with the default admission
+   * @param handler the callback logic to execute when the function is invoked
+   * @throws IllegalArgumentException if the options limit calls in flight or use the background
+   *     lane
+   * @see #bind(String, WebviewBindCallback)
+   */
+  void bind(
+      @NonNull String name, @NonNull BindOptions options, @NonNull WebviewBindCallback handler);
+
+  /**
+   * Binds a Java callback that returns a pre-encoded result to a global JavaScript function.
+   *
+   * <p>Returning constants such as {@link Utf8Text#OK} or those created via {@link
+   * Utf8Text#encode(String)} passes the result back to JavaScript without encoding or copying.
+   *
+   * @param name the name of the function in the JavaScript {@code window} object
+   * @param handler the callback logic to execute when the function is invoked
+   * @implNote The result bytes are passed to JavaScript as is.
+   * @see #bind(String, WebviewBindCallback)
+   */
+  void bindEncoded(@NonNull String name, @NonNull WebviewEncodedBindCallback handler);
+
+  /**
+   * Binds a Java callback that reads the request directly from native memory to a global
+   * JavaScript function.
+   *
+   * <p>The handler receives the JSON arguments as a {@link WebviewRequest}, a view over the UTF-8
+   * bytes that is only decoded if the handler reads it as characters. Handlers that route on a
+   * prefix or parse the bytes directly never materialize a Java String.
+   *
+   * @param name the name of the function in the JavaScript {@code window} object
+   * @param handler the callback logic to execute when the function is invoked
+   * @implNote The request bytes are passed to the handler as is, non-ASCII characters are not
+   *     escaped.
+   * @see #bind(String, WebviewBindCallback)
+   */
+  void bindRaw(@NonNull String name, @NonNull WebviewRawBindCallback handler);
+
+  /**
+   * Binds an asynchronous Java callback to a global JavaScript function.
+   *
+   * <p>The handler runs on the bind executor, virtual threads unless configured via {@link
+   * Builder#bindExecutor(Executor)}, so a slow handler does not freeze the window. The UI thread
+   * only copies the request bytes, decoding the arguments and encoding the result happen on the
+   * executor, and the result is returned to JavaScript when the future completes.
+   *
+   * <p>A call passed an {@code AbortSignal} as its last argument can be aborted by the page. The
+   * Promise then rejects at once, the handler's thread is interrupted while {@code apply} runs
+   * and the returned future is cancelled. For a binding with a {@link BindOptions#rate(RatePolicy)
+   * rate} or {@link BindOptions#cache(Duration) cache} the call may be shared with other callers,
+   * so an abort only rejects the Promise of the caller and the call runs on.
+   *
+   * @param name the name of the function in the JavaScript {@code window} object
+   * @param handler the callback logic to execute when the function is invoked
+   * @see #bind(String, WebviewBindCallback)
+   */
+  void bindAsync(@NonNull String name, @NonNull WebviewAsyncBindCallback handler);
+
+  /**
+   * Binds an async Java callback with admission control to a global JavaScript function.
+   *
+   * <p>The options limit the calls in flight and queued for the binding, and what happens to the
+   * calls over that, so a runaway page cannot flood the handler. Background bindings share a
+   * limit of running calls so that interactive bindings run ahead of them. Queue times are
+   * recorded as {@code io.avaje.webview.BindQueue} JFR events and in {@link #bindStats(String)}.
+   *
+   * @param name the name of the function in the JavaScript {@code window} object
+   * @param options the limits and lane of the binding
+   * @param handler the callback logic to execute when the function is invoked
+   * @see #bindAsync(String, WebviewAsyncBindCallback)
+   */
+  void bindAsync(
+      @NonNull String name,
+      @NonNull BindOptions options,
+      @NonNull WebviewAsyncBindCallback handler);
+
+  /**
+   * Drops all results of the function cached in the page, see {@link
+   * BindOptions#cache(Duration)}. Calls in flight still settle their callers, later calls go to
+   * Java.
+   *
+   * @param name the name of the bound function
+   */
+  void invalidate(@NonNull String name);
+
+  /**
+   * Drops the result of the function cached in the page for the arguments.
+   *
+   * <p>The arguments are passed to the page as a string and parsed as JSON there, arguments that
+   * are not valid JSON are logged to the console and drop nothing.
+   *
+   * @param name the name of the bound function
+   * @param jsonArgs the arguments as a JSON array, e.g. {@code "[42]"}
+   * @see #invalidate(String)
+   */
+  void invalidate(@NonNull String name, @NonNull String jsonArgs);
+
+  /**
+   * Publishes a JSON value to the subscribers of a topic in the page.
+   *
+   * <p>Values are conflated per topic, if the page falls behind only the latest value of a topic
+   * is delivered. The values of all topics are delivered together once per UI tick. A value
+   * published to a topic that the page does not subscribe to is dropped.
+   *
+   * <pre>{@code
+   * webview.publish("ticker/ACME", "{\"price\":101.5}");
+   * }</pre>
+   *
+   * <pre>{@code
+   * const unsubscribe = __avaje__.subscribe("ticker/ACME", quote => render(quote));
+   * }</pre>
+   *
+   * @param topic the topic
+   * @param json the value as JSON
+   * @implNote The page reports its subscriptions once the first value is published. Until it has
+   *     done so the latest value of each topic is kept, so initial state published before the page
+   *     subscribed is delivered when it does.
+   */
+  void publish(@NonNull String topic, @NonNull String json);
+
+  /**
+   * Publishes a value to the subscribers of a topic in the page, serialized only when delivered.
+   * The supplier is not called for a topic that the page does not subscribe to, or when a later
+   * value replaces it before delivery.
+   *
+   * @param topic the topic
+   * @param json supplies the value as JSON, called on the UI thread
+   * @see #publish(String, String)
+   */
+  void publish(@NonNull String topic, @NonNull Supplier<String> json);
+
+  /**
+   * Returns a new batch of DOM operations. The operations are sent to the page together when the
+   * batch is flushed and applied in one {@code requestAnimationFrame} callback, reads of the batch
+   * complete from the same round trip.
+   *
+   * <pre>{@code
+   * webview.dom()
+   *     .setText("#status", "Saved")
+   *     .toggleClass("#status", "dirty", false)
+   *     .flush();
+   * }</pre>
+   *
+   * @return a new batch
+   */
+  DomBatch dom();
+
+  /**
+   * Registers a JavaScript function under a name, to be called via {@link #invoke(String,
+   * String)}. The function is installed once, on the current page and on every page loaded after,
+   * so each invoke sends only its id and the arguments rather than the source.
+   *
+   * <pre>{@code
+   * webview.registerScript("render", "function (rows, total) { table.render(rows, total); }");
+   * webview.invoke("render", "[[{\"id\":1}],1]");
+   * }</pre>
+   *
+   * <p>Errors thrown by the function, or the rejection of a Promise that it returns, are logged to
+   * the console with the name, as is an error thrown while the source is evaluated. A source that
+   * does not parse is reported by the page as a SyntaxError, and each invoke of it then logs the
+   * name as not installed. Other registered scripts are unaffected either way.
+   *
+   * <p>Registering a name again with another source replaces the function. Init scripts cannot be
+   * removed, so each replacement adds one more script that every later page load runs, register
+   * functions once rather than per update. Registering the same source again does nothing.
+   *
+   * @param name the name of the script
+   * @param source a JavaScript function expression
+   */
+  void registerScript(@NonNull String name, @NonNull String source);
+
+  /**
+   * Calls the function registered with {@link #registerScript(String, String)}.
+   *
+   * @param name the name of the script
+   * @param jsonArgs the arguments as a JSON array
+   * @throws IllegalArgumentException if no script is registered with the name
+   */
+  void invoke(@NonNull String name, @NonNull String jsonArgs);
+
+  /**
+   * Returns the admission statistics of an async binding bound with {@link BindOptions}.
+   *
+   * @param name the name of the bound function
+   * @return the statistics, or null if the function has no admission control
+   */
+  @Nullable
+  BindStats bindStats(@NonNull String name);
+
+  /**
+   * Binds a Java callback that streams its result to a global JavaScript function.
+   *
+   * <p>The function returns an async iterable that yields the items of the handler's publisher,
+   * consumed via {@code for await}. Items are pushed to the page as they are published, with
+   * backpressure from the page, so the first items render before the last are produced.
+   *
+   * @param name the name of the function in the JavaScript {@code window} object
+   * @param handler the callback returning the publisher of JSON items
+   * @see WebviewStreamBindCallback
+   */
+  void bindStream(@NonNull String name, @NonNull WebviewStreamBindCallback handler);
+
   /**
    * Removes a previously bound JavaScript function.
    *
@@ -157,12 +427,27 @@ public interface Webview extends Closeable, Runnable {
    * Schedules a task to be executed on the webview's internal event thread.
    *
    * <p>Use this for thread-safe interaction with the webview state from external background
-   * threads.
+   * threads. Tasks queued between two runs of the event thread are executed as one batch, and a
+   * task dispatched from the event thread itself is executed immediately.
    *
    * @param handler the task to run on the event thread
+   * @see Builder#dispatchCapacity(int)
    */
   void dispatch(@NonNull Runnable handler);
 
+  /**
+   * Schedules a task to be executed on the webview's internal event thread, replacing any task
+   * with the same key that has not run yet.
+   *
+   * <p>Use this for high frequency updates (like progress) where only the latest value matters.
+   * However many times this is called between two runs of the event thread, only the newest task
+   * for the key is executed.
+   *
+   * @param key identifies the kind of update, for example a constant or an element id
+   * @param handler the task to run on the event thread
+   */
+  void dispatchLatest(@NonNull Object key, @NonNull Runnable handler);
+
   /**
    * Starts the webview event loop.
    *
@@ -209,6 +494,44 @@ public interface Webview extends Closeable, Runnable {
    */
   String version();
 
+  /**
+   * Returns the optional native functions supported by the loaded webview library, for example
+   * {@code webview_get_native_handle} which is only present in newer versions.
+   *
+   * @return the names of the supported optional functions
+   */
+  Set<String> capabilities();
+
+  /**
+   * Returns a native handle of the given kind. Requires {@code webview_get_native_handle} in
+   * {@link #capabilities()}.
+   *
+   * @param kind the kind of handle
+   * @return the native handle pointer
+   * @throws UnsupportedOperationException when not supported by the webview library
+   */
+  MemorySegment nativeHandle(NativeHandleKind kind);
+
+  /**
+   * Returns the native resources held by this webview, the callbacks registered for its bindings
+   * and dispatch queue and the memory of its bindings. The webview itself counts until {@link
+   * #run()} has returned and destroyed it.
+   *
+   * @return the resources held by this webview
+   * @see Builder#leakDetection(boolean)
+   */
+  ResourceUsage resourceUsage();
+
+  /**
+   * Returns the native resources held by all webviews of the process, including the shared upcall
+   * stubs and the buffers used to pass strings to native code.
+   *
+   * @return the resources held by all webviews
+   */
+  static ResourceUsage totalResourceUsage() {
+    return ResourceTracker.total();
+  }
+
   /**
    * Sets the icon for the webview window
    *
@@ -223,6 +546,33 @@ public interface Webview extends Closeable, Runnable {
    */
   void setIcon(URI uri);
 
+  /** The kinds of handle returned by {@link #nativeHandle(NativeHandleKind)}. */
+  enum NativeHandleKind {
+
+    /** The top level window, a GtkWindow, NSWindow or HWND. */
+    UI_WINDOW,
+
+    /** The browser widget, a GtkWidget, NSView or HWND. */
+    UI_WIDGET,
+
+    /** The browser controller, a WebKitWebView, WKWebView or ICoreWebView2Controller. */
+    BROWSER_CONTROLLER
+  }
+
+  /** What {@link #dispatch(Runnable)} does when a bounded dispatch queue is full. */
+  enum DispatchOverflow {
+
+    /** Drop the task. */
+    DROP,
+
+    /**
+     * Block the calling thread until the queue has capacity. The queue is only drained while
+     * {@link #run()} runs, when full before that dispatch throws {@link IllegalStateException}
+     * rather than block forever.
+     */
+    BLOCK
+  }
+
   /** Interface for configuring and instantiating {@link Webview} instances. */
   public interface Builder {
 
@@ -311,6 +661,124 @@ public interface Webview extends Closeable, Runnable {
      */
     Builder shutdownHook(boolean shutdownHook);
 
+    /**
+     * Bounds the number of tasks pending on the dispatch queue. Defaults to unbounded.
+     *
+     * @param dispatchCapacity the maximum number of pending tasks, at least 1
+     * @return this builder
+     * @see #dispatchOverflow(DispatchOverflow)
+     */
+    Builder dispatchCapacity(int dispatchCapacity);
+
+    /**
+     * Sets what happens when a bounded dispatch queue is full. Defaults to {@link
+     * DispatchOverflow#DROP}.
+     *
+     * @param dispatchOverflow drop the task or block the dispatching thread
+     * @return this builder
+     */
+    Builder dispatchOverflow(DispatchOverflow dispatchOverflow);
+
+    /**
+     * Use the given backend instead of the bundled native library. No native library is extracted
+     * or loaded.
+     *
+     * <p>Use {@link FakeWebviewNative} to run bindings, dispatch and eval in memory, for tests and
+     * benchmarks on machines without a display.
+     *
+     * @param backend the backend to use
+     * @return this builder
+     */
+    Builder backend(WebviewNative backend);
+
+    /**
+     * Records where the webview was created. Native callbacks still registered once {@link
+     * Webview#close()} has released the webview are logged with that site, as is a webview that
+     * is garbage collected without {@link Webview#run()} having destroyed it. A webview that has
+     * bound a function is held until it is closed, so only one that never bound can be collected
+     * unclosed. Defaults to the system property {@code avaje.webview.leakDetection}.
+     *
+     * <p>Capturing a stack trace per webview has a cost, this is intended for debugging.
+     *
+     * @param leakDetection {@code true} to record allocation sites
+     * @return this builder
+     */
+    Builder leakDetection(boolean leakDetection);
+
+    /**
+     * Sets the executor that runs the handlers of {@link Webview#bindAsync(String,
+     * WebviewAsyncBindCallback)}. Defaults to a new virtual thread per call.
+     *
+     * @param bindExecutor the executor for asynchronous bind handlers
+     * @return this builder
+     */
+    Builder bindExecutor(Executor bindExecutor);
+
+    /**
+     * Sets the maximum calls of {@link BindOptions.Lane#BACKGROUND background} bindings that run
+     * at once, further background calls wait. Defaults to half the available processors.
+     *
+     * @param backgroundConcurrency the maximum running background calls, at least 1
+     * @return this builder
+     */
+    Builder backgroundConcurrency(int backgroundConcurrency);
+
+    /**
+     * Batches the calls of bound functions that JavaScript makes within the same microtask into a
+     * single bridge crossing with a single response. Defaults to {@code false}.
+     *
+     * <p>The synchronous handlers of a batch run in turn on the UI thread and async handlers run
+     * in parallel, the response is returned once the last of them completes. A page with many
+     * small calls per tick, e.g. one per table row, crosses the bridge once per tick.
+     *
+     * @param batchCalls {@code true} to batch calls
+     * @return this builder
+     */
+    Builder batchCalls(boolean batchCalls);
+
+    /**
+     * Coalesces the scripts passed to {@link Webview#eval(String)} into one evaluation per UI
+     * tick. Defaults to off, each eval is evaluated at once.
+     *
+     * <p>A script waits on the UI thread's queue for up to {@code maxLatency} (zero for until the
+     * next tick) and is then evaluated together with the scripts queued meanwhile, in order, at
+     * most {@code maxBatch} per evaluation. A batch that is full does not wait. Each script still
+     * runs on its own, one that throws or does not parse is logged to the console and the others
+     * run. A producer calling eval hundreds of times a second crosses the bridge once per tick.
+     *
+     * <p>The other calls that run scripts in the page ({@code evalForResult}, {@code invoke},
+     * {@code invalidate}, published values, stream items and DOM batches) queue behind the pending
+     * evals, so they keep their order. {@code setHTML} and {@code loadURL} evaluate the pending
+     * evals first and then navigate at once, as without this option.
+     *
+     * <p>Each script of a batch runs via an indirect {@code eval}, which a page Content Security
+     * Policy without {@code 'unsafe-eval'} blocks. Leave this off for such pages. Its top-level
+     * {@code var} and function declarations are globals, as in a script, but top-level {@code
+     * let}, {@code const} and {@code class} declarations are local to the eval and not seen by
+     * later scripts. Share state between evals through {@code var} or properties of {@code
+     * window}.
+     *
+     * @param maxBatch the maximum scripts evaluated together, at least 1
+     * @param maxLatency the maximum time a script waits for others
+     * @return this builder
+     */
+    Builder coalesceEvals(int maxBatch, Duration maxLatency);
+
+    /**
+     * Passes non-ASCII text across the bridge as UTF-8. Defaults to {@code false}, where every
+     * non-ASCII char of bind requests and results, stream items, published values and quoted
+     * scripts is rewritten as a 6 byte unicode escape.
+     *
+     * <p>With UTF-8 only what JSON and JavaScript string literals require is escaped, plus the
+     * line and paragraph separators and unpaired surrogates. CJK text then crosses the bridge at
+     * 3 bytes per char instead of 6, and emoji at 4 bytes instead of 12. Handlers receive the
+     * arguments as the page sent them rather than as unicode escapes.
+     *
+     * @param utf8 {@code true} to pass UTF-8 through
+     * @return this builder
+     */
+    Builder utf8(boolean utf8);
+
     /**
      * Builds a Webview using the configuration
      *
@@ -6,7 +6,9 @@ import static io.avaje.webview.platform.Platform.archTarget;
 import module java.base;
 
 import io.avaje.webview.Webview.Builder;
+import io.avaje.webview.Webview.DispatchOverflow;
 import io.avaje.webview.platform.LinuxLibC;
+import io.avaje.webview.spi.WebviewNative;
 
 /**
  * A fluent builder for configuring and instantiating {@link Webview} instances.
@@ -44,6 +46,16 @@ final class WebviewBuilder implements Builder {
   private String url;
   private boolean shutdownHook = true;
   private boolean keepExtractedFile;
+  private int dispatchCapacity;
+  private DispatchOverflow dispatchOverflow = DispatchOverflow.DROP;
+  private WebviewNative backend;
+  private boolean leakDetection = ResourceTracker.LEAK_DETECTION;
+  private Executor bindExecutor;
+  private boolean batchCalls;
+  private int evalBatchSize;
+  private Duration evalLatency = Duration.ZERO;
+  private boolean utf8;
+  private int backgroundConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
 
   WebviewBuilder() {}
 
@@ -107,10 +119,92 @@ final class WebviewBuilder implements Builder {
     return this;
   }
 
+  @Override
+  public WebviewBuilder dispatchCapacity(int dispatchCapacity) {
+    if (dispatchCapacity < 1) {
+      throw new IllegalArgumentException("dispatchCapacity must be at least 1");
+    }
+    this.dispatchCapacity = dispatchCapacity;
+    return this;
+  }
+
+  @Override
+  public WebviewBuilder dispatchOverflow(DispatchOverflow dispatchOverflow) {
+    this.dispatchOverflow = dispatchOverflow;
+    return this;
+  }
+
+  @Override
+  public WebviewBuilder backend(WebviewNative backend) {
+    this.backend = backend;
+    return this;
+  }
+
+  @Override
+  public WebviewBuilder leakDetection(boolean leakDetection) {
+    this.leakDetection = leakDetection;
+    return this;
+  }
+
+  @Override
+  public WebviewBuilder bindExecutor(Executor bindExecutor) {
+    this.bindExecutor = bindExecutor;
+    return this;
+  }
+
+  @Override
+  public WebviewBuilder backgroundConcurrency(int backgroundConcurrency) {
+    if (backgroundConcurrency < 1) {
+      throw new IllegalArgumentException("backgroundConcurrency must be at least 1");
+    }
+    this.backgroundConcurrency = backgroundConcurrency;
+    return this;
+  }
+
+  @Override
+  public WebviewBuilder batchCalls(boolean batchCalls) {
+    this.batchCalls = batchCalls;
+    return this;
+  }
+
+  @Override
+  public WebviewBuilder coalesceEvals(int maxBatch, Duration maxLatency) {
+    if (maxBatch < 1) {
+      throw new IllegalArgumentException("maxBatch must be at least 1");
+    }
+    if (maxLatency.isNegative()) {
+      throw new IllegalArgumentException("maxLatency must not be negative");
+    }
+    this.evalBatchSize = maxBatch;
+    this.evalLatency = maxLatency;
+    return this;
+  }
+
+  @Override
+  public WebviewBuilder utf8(boolean utf8) {
+    this.utf8 = utf8;
+    return this;
+  }
+
   @Override
   public Webview build() {
-    var n = initNative(this);
-    var view = new DWebView(n, enableDeveloperTools, windowPointer, width, height);
+    var n = backend != null ? backend : initNative(this);
+    var view =
+        new DWebView(
+            n,
+            enableDeveloperTools,
+            windowPointer,
+            width,
+            height,
+            dispatchCapacity,
+            dispatchOverflow,
+            leakDetection,
+            bindExecutor,
+            backgroundConcurrency,
+            batchCalls,
+            evalBatchSize,
+            evalLatency,
+            utf8);
     if (title != null) {
       view.setTitle(title);
     }
@@ -139,6 +233,11 @@ final class WebviewBuilder implements Builder {
     }
   }
 
+  /** Extract and load the native library without creating a webview, for benchmarks. */
+  WebviewNative nativeLibrary() {
+    return initNative(this);
+  }
+
   private synchronized WebviewNative initNative(WebviewBuilder bootstrap) {
     if (NATIVE_LIB == null) {
       NATIVE_LIB = bootstrap.initNativeLibrary();
@@ -162,7 +261,7 @@ final class WebviewBuilder implements Builder {
     }
 
     // Return the FFM-based native implementation
-    return new WebviewNative();
+    return new FfmWebviewNative();
   }
 
   private File createTarget(String lib) {
@@ -216,7 +315,7 @@ final class WebviewBuilder implements Builder {
   }
 
   private static boolean extractToFile(String lib, File target) {
-    try (var in = WebviewNative.class.getResourceAsStream(lib.toLowerCase());
+    try (var in = FfmWebviewNative.class.getResourceAsStream(lib.toLowerCase());
         var out = new FileOutputStream(target)) {
       if (in == null)
         throw new IllegalStateException("Failed to access resource of native: " + lib);
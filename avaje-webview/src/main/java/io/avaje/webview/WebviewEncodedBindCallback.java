@@ -0,0 +1,44 @@
+/**
+ * MIT LICENSE
+ *
+ * <p>Copyright (c) 2024 Alex Bowles @ Casterlabs
+ *
+ * <p>Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * <p>The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * <p>THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.avaje.webview;
+
+/**
+ * A callback for functions invoked from JavaScript that returns a pre-encoded result.
+ *
+ * <p>Registered via {@link Webview#bindEncoded(String, WebviewEncodedBindCallback)}. Returning a
+ * constant such as {@link Utf8Text#OK} or one created by {@link Utf8Text#encode(String)} passes the
+ * result to the webview without encoding or copying it.
+ */
+@FunctionalInterface
+public interface WebviewEncodedBindCallback {
+
+  /**
+   * Processes a call from the webview's JavaScript context.
+   *
+   * @param jsonArgs A JSON-encoded string representing an array of arguments passed from JavaScript
+   *     (e.g., {@code "[1, \"hello\", true]"}).
+   * @return The UTF-8 encoded JSON return value to be sent back to JavaScript. Return {@link
+   *     Utf8Text#NULL} (or {@code null}) for void functions.
+   * @throws Throwable Any exception thrown will be caught by the bridge and passed to the
+   *     JavaScript Promise's {@code .catch()} handler.
+   */
+  Utf8Text apply(String jsonArgs) throws Throwable;
+}
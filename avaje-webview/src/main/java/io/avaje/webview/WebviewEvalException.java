@@ -0,0 +1,14 @@
+package io.avaje.webview;
+
+/**
+ * A script evaluated via {@link Webview#evalForResult(String)} threw, the message is the
+ * JavaScript error with its stack if the engine provides one.
+ */
+public final class WebviewEvalException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public WebviewEvalException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ * MIT LICENSE
+ *
+ * <p>Copyright (c) 2024 Alex Bowles @ Casterlabs
+ *
+ * <p>Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * <p>The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * <p>THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.avaje.webview;
+
+/**
+ * A callback for functions invoked from JavaScript that reads the request directly from native
+ * memory.
+ *
+ * <p>Registered via {@link Webview#bindRaw(String, WebviewRawBindCallback)}. The request is not
+ * copied into a Java String, handlers that route on a prefix of the arguments or parse the UTF-8
+ * bytes directly never materialize one.
+ */
+@FunctionalInterface
+public interface WebviewRawBindCallback {
+
+  /**
+   * Processes a call from the webview's JavaScript context.
+   *
+   * @param request The JSON array of arguments as UTF-8 in native memory, only valid for the
+   *     duration of this call.
+   * @return The UTF-8 encoded JSON return value to be sent back to JavaScript. Return {@link
+   *     Utf8Text#NULL} (or {@code null}) for void functions.
+   * @throws Throwable Any exception thrown will be caught by the bridge and passed to the
+   *     JavaScript Promise's {@code .catch()} handler.
+   */
+  Utf8Text apply(WebviewRequest request) throws Throwable;
+}
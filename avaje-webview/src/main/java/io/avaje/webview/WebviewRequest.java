@@ -0,0 +1,99 @@
+package io.avaje.webview;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_LONG_UNALIGNED;
+
+import module java.base;
+
+/**
+ * The JSON array of arguments of a call from JavaScript, as UTF-8 bytes in native memory.
+ *
+ * <p>This is a {@link CharSequence} view over the bytes. When the request is ASCII (the common
+ * case) characters are read straight from native memory, otherwise the request is decoded once on
+ * first access. Use {@link #bytes()} to parse the bytes directly, or {@link #startsWith(Utf8Text)}
+ * to route on a prefix without decoding anything.
+ *
+ * <p>The request is only valid for the duration of the {@link WebviewRawBindCallback} call,
+ * accessing it afterwards throws {@link IllegalStateException}.
+ */
+public final class WebviewRequest implements CharSequence {
+
+  private static final long HIGH_BITS = 0x8080808080808080L;
+
+  private final MemorySegment bytes;
+  private final boolean ascii;
+  private String decoded;
+
+  WebviewRequest(MemorySegment bytes) {
+    this(bytes, isAscii(bytes));
+  }
+
+  private WebviewRequest(MemorySegment bytes, boolean ascii) {
+    this.bytes = bytes.asReadOnly();
+    this.ascii = ascii;
+  }
+
+  /** Return the UTF-8 bytes of the request (excluding the NUL terminator). */
+  public MemorySegment bytes() {
+    return bytes;
+  }
+
+  /** Return the size of the request in bytes. */
+  public long byteSize() {
+    return bytes.byteSize();
+  }
+
+  /** Return true if the request bytes start with the given prefix. Nothing is decoded. */
+  public boolean startsWith(Utf8Text prefix) {
+    long length = prefix.byteSize();
+    return length <= bytes.byteSize()
+        && MemorySegment.mismatch(bytes, 0, length, prefix.segment(), 0, length) == -1;
+  }
+
+  @Override
+  public int length() {
+    return ascii ? (int) bytes.byteSize() : toString().length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (ascii) {
+      return (char) bytes.get(JAVA_BYTE, Objects.checkIndex(index, bytes.byteSize()));
+    }
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (ascii) {
+      Objects.checkFromToIndex(start, end, bytes.byteSize());
+      return new WebviewRequest(bytes.asSlice(start, end - start), true);
+    }
+    return toString().subSequence(start, end);
+  }
+
+  /** Decode the request, the decoded String is retained for subsequent calls. */
+  @Override
+  public String toString() {
+    if (decoded == null) {
+      decoded = new String(bytes.toArray(JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+    return decoded;
+  }
+
+  private static boolean isAscii(MemorySegment bytes) {
+    long size = bytes.byteSize();
+    long i = 0;
+    for (; i + 8 <= size; i += 8) {
+      if ((bytes.get(JAVA_LONG_UNALIGNED, i) & HIGH_BITS) != 0) {
+        return false;
+      }
+    }
+    for (; i < size; i++) {
+      if (bytes.get(JAVA_BYTE, i) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
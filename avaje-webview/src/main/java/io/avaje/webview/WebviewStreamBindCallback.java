@@ -0,0 +1,54 @@
+/**
+ * MIT LICENSE
+ *
+ * <p>Copyright (c) 2024 Alex Bowles @ Casterlabs
+ *
+ * <p>Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * <p>The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * <p>THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.avaje.webview;
+
+import module java.base;
+
+/**
+ * A callback for functions invoked from JavaScript that stream their result.
+ *
+ * <p>Registered via {@link Webview#bindStream(String, WebviewStreamBindCallback)}, the function
+ * returns an async iterable in JavaScript that yields each item of the publisher:
+ *
+ * <pre>{@code
+ * for await (const row of search("error")) {
+ *   table.append(row);
+ * }
+ * }</pre>
+ *
+ * The page requests items as it consumes them, so a publisher that honours {@link
+ * Flow.Subscription#request(long)}, e.g. a {@link SubmissionPublisher}, is held back by a slow
+ * page. Leaving the loop early cancels the subscription.
+ */
+@FunctionalInterface
+public interface WebviewStreamBindCallback {
+
+  /**
+   * Processes a call from the webview's JavaScript context, runs on the UI thread.
+   *
+   * @param jsonArgs A JSON-encoded string representing an array of arguments passed from JavaScript
+   *     (e.g., {@code "[1, \"hello\", true]"}).
+   * @return A publisher of JSON-encoded items, a {@code null} item is sent as {@code null}.
+   * @throws Throwable Any exception thrown, or that the publisher signals, will be caught by the
+   *     bridge and thrown from the JavaScript loop.
+   */
+  Flow.Publisher<String> apply(String jsonArgs) throws Throwable;
+}
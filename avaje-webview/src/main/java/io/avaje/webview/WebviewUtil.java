@@ -40,14 +40,134 @@ final class WebviewUtil {
     return out.substring(0, out.length() - 2).replace("\r", "");
   }
 
+  /** The ASCII chars that {@link #jsonEscape(String)} escapes, all others above 127 are too. */
+  private static final boolean[] JSON_ESCAPED = escaped("\0\n\t\r\\\"\b\f");
+
+  /** The ASCII chars that {@link #forceSafeChars(String)} escapes. */
+  private static final boolean[] SAFE_ESCAPED = escaped("\0");
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static boolean[] escaped(String chars) {
+    var escaped = new boolean[128];
+    for (int i = 0; i < chars.length(); i++) {
+      escaped[chars.charAt(i)] = true;
+    }
+    return escaped;
+  }
+
+  /**
+   * Escape the input for use inside a JavaScript or JSON string literal, non-ASCII chars as
+   * unicode escapes. Returns the input itself when nothing needs escaping.
+   */
   static String jsonEscape(@NonNull String input) {
-    char[] chars = input.toCharArray();
+    return jsonEscape(input, false);
+  }
+
+  /**
+   * Escape the input for use inside a JavaScript or JSON string literal. Returns the input itself
+   * when nothing needs escaping.
+   *
+   * @param utf8 false to escape all non-ASCII chars, true to keep them except those in {@link
+   *     #unsafeUtf8(String, int, char)}
+   */
+  static String jsonEscape(@NonNull String input, boolean utf8) {
+    int first = firstEscaped(input, JSON_ESCAPED, utf8);
+    if (first < 0) {
+      return input;
+    }
+    return escape(input, first, JSON_ESCAPED, utf8, sized(input)).toString();
+  }
+
+  /** Append the input, escaped as by {@link #jsonEscape(String)}, to the output. */
+  static StringBuilder jsonEscape(@NonNull String input, StringBuilder output) {
+    return jsonEscape(input, false, output);
+  }
+
+  /** Append the input, escaped as by {@link #jsonEscape(String, boolean)}, to the output. */
+  static StringBuilder jsonEscape(@NonNull String input, boolean utf8, StringBuilder output) {
+    int first = firstEscaped(input, JSON_ESCAPED, utf8);
+    return first < 0 ? output.append(input) : escape(input, first, JSON_ESCAPED, utf8, output);
+  }
 
-    StringBuilder output = new StringBuilder();
+  /**
+   * Escape the NUL and non-ASCII chars of JSON as unicode escapes, so that it passes through a C
+   * string as ASCII. Returns the input itself when nothing needs escaping.
+   */
+  static String forceSafeChars(@NonNull String input) {
+    return forceSafeChars(input, false);
+  }
 
-    for (char ch : chars) {
+  /**
+   * Escape the chars of JSON that cannot pass through a C string. Returns the input itself when
+   * nothing needs escaping.
+   *
+   * @param utf8 false to escape all non-ASCII chars, true to keep them except those in {@link
+   *     #unsafeUtf8(String, int, char)}
+   */
+  static String forceSafeChars(@NonNull String input, boolean utf8) {
+    int first = firstEscaped(input, SAFE_ESCAPED, utf8);
+    if (first < 0) {
+      return input;
+    }
+    return escape(input, first, SAFE_ESCAPED, utf8, sized(input)).toString();
+  }
+
+  /** Append the input, escaped as by {@link #forceSafeChars(String)}, to the output. */
+  static StringBuilder forceSafeChars(@NonNull String input, StringBuilder output) {
+    return forceSafeChars(input, false, output);
+  }
+
+  /** Append the input, escaped as by {@link #forceSafeChars(String, boolean)}, to the output. */
+  static StringBuilder forceSafeChars(@NonNull String input, boolean utf8, StringBuilder output) {
+    int first = firstEscaped(input, SAFE_ESCAPED, utf8);
+    return first < 0 ? output.append(input) : escape(input, first, SAFE_ESCAPED, utf8, output);
+  }
+
+  /**
+   * Return true for the non-ASCII chars that are escaped even when passing UTF-8 through: the line
+   * and paragraph separators, which end a string literal in older JavaScript engines, and
+   * unpaired surrogates, which have no UTF-8 encoding.
+   */
+  private static boolean unsafeUtf8(String input, int index, char ch) {
+    if (Character.isHighSurrogate(ch)) {
+      return index + 1 == input.length() || !Character.isLowSurrogate(input.charAt(index + 1));
+    }
+    if (Character.isLowSurrogate(ch)) {
+      return index == 0 || !Character.isHighSurrogate(input.charAt(index - 1));
+    }
+    return ch == 0x2028 || ch == 0x2029;
+  }
+
+  /** Return the index of the first char to escape, or -1 if there is none. */
+  private static int firstEscaped(String input, boolean[] escaped, boolean utf8) {
+    for (int i = 0, length = input.length(); i < length; i++) {
+      char ch = input.charAt(i);
+      if (ch <= 127 ? escaped[ch] : !utf8 || unsafeUtf8(input, i, ch)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Room for the input plus some escapes, a non-ASCII char takes 6 chars. */
+  private static StringBuilder sized(String input) {
+    return new StringBuilder(input.length() + (input.length() >> 2) + 16);
+  }
+
+  /** Append the input, the runs between escaped chars are appended as a whole. */
+  private static StringBuilder escape(
+      String input, int first, boolean[] escaped, boolean utf8, StringBuilder output) {
+    int length = input.length();
+    int start = 0;
+    for (int i = first; i < length; i++) {
+      char ch = input.charAt(i);
+      if (ch <= 127 ? !escaped[ch] : utf8 && !unsafeUtf8(input, i, ch)) {
+        continue;
+      }
+      output.append(input, start, i);
+      start = i + 1;
       switch (ch) {
-        case 0 -> output.append("\\u0000");
         case '\n' -> output.append("\\n");
         case '\t' -> output.append("\\t");
         case '\r' -> output.append("\\r");
@@ -55,34 +175,45 @@ final class WebviewUtil {
         case '"' -> output.append("\\\"");
         case '\b' -> output.append("\\b");
         case '\f' -> output.append("\\f");
-        default -> {
-          if (ch > 127) {
-            output.append("\\u").append(String.format("%04x", (int) ch));
-          } else {
-            output.append(ch);
-          }
-        }
+        default ->
+            output
+                .append('\\')
+                .append('u')
+                .append(HEX[ch >> 12])
+                .append(HEX[(ch >> 8) & 0xF])
+                .append(HEX[(ch >> 4) & 0xF])
+                .append(HEX[ch & 0xF]);
       }
     }
-
-    return output.toString();
+    return output.append(input, start, length);
   }
 
-  static String forceSafeChars(@NonNull String input) {
-    char[] chars = input.toCharArray();
-
-    StringBuilder output = new StringBuilder();
-
-    for (char ch : chars) {
-      if (ch == 0) {
-        output.append("\\u0000");
-      } else if (ch > 127) {
-        output.append("\\u").append(String.format("%04x", (int) ch));
-      } else {
-        output.append(ch);
+  /** Return the value of a JSON string, or the input as is when it is not a string. */
+  static String jsonUnquote(String json) {
+    if (json.length() < 2 || json.charAt(0) != '"') {
+      return json;
+    }
+    var value = new StringBuilder(json.length());
+    for (int i = 1; i < json.length() - 1; i++) {
+      char c = json.charAt(i);
+      if (c != '\\' || i + 1 >= json.length() - 1) {
+        value.append(c);
+        continue;
+      }
+      char escaped = json.charAt(++i);
+      switch (escaped) {
+        case 'n' -> value.append('\n');
+        case 't' -> value.append('\t');
+        case 'r' -> value.append('\r');
+        case 'b' -> value.append('\b');
+        case 'f' -> value.append('\f');
+        case 'u' -> {
+          value.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+          i += 4;
+        }
+        default -> value.append(escaped);
       }
     }
-
-    return output.toString();
+    return value.toString();
   }
 }
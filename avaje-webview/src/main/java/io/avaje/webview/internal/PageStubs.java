@@ -0,0 +1,54 @@
+package io.avaje.webview.internal;
+
+import module java.base;
+import module org.jspecify;
+
+import io.avaje.webview.spi.WebviewNative;
+
+/**
+ * The stubs that a webview has installed into its page, so that {@link
+ * io.avaje.webview.spi.FakeWebviewNative} can call a bound function by name the way its stub
+ * would.
+ *
+ * <p>Bound functions are not bound natively one by one, their stubs call a single native entry
+ * with a method id. That scheme is internal to the library, so it is shared with the fake through
+ * this package, which is not exported, rather than through the backend SPI.
+ *
+ * <p>Every webview attaches its stubs, whatever its backend. Backends are held weakly, so the stubs
+ * of a webview that is never closed go with its backend.
+ */
+public abstract class PageStubs {
+
+  private static final Map<WebviewNative, PageStubs> PAGES =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  /** Attach the stubs of the webview created by the backend. */
+  public static void attach(WebviewNative backend, PageStubs stubs) {
+    PAGES.put(backend, stubs);
+  }
+
+  /** Detach the stubs, the webview of the backend is released. */
+  public static void detach(WebviewNative backend) {
+    PAGES.remove(backend);
+  }
+
+  /** Return the stubs of the webview created by the backend, or null if none are attached. */
+  public static @Nullable PageStubs of(WebviewNative backend) {
+    return PAGES.get(backend);
+  }
+
+  /** Return the name of the native binding that the stubs call. */
+  public abstract String entry();
+
+  /** Return the names of the functions whose stubs are installed. */
+  public abstract Set<String> names();
+
+  /** Return the method id that the stub of the function passes, or -1 if it is not installed. */
+  public abstract int id(String name);
+
+  /**
+   * Return the request that the stub of the function sends to the {@link #entry()} for a call
+   * with the arguments, or null if its stub is not installed.
+   */
+  public abstract @Nullable String request(String name, String jsonArgs);
+}
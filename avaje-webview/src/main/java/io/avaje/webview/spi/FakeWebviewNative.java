@@ -0,0 +1,293 @@
+package io.avaje.webview.spi;
+
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import module java.base;
+import module org.jspecify;
+
+import io.avaje.webview.Utf8Text;
+import io.avaje.webview.internal.PageStubs;
+
+/**
+ * A pure Java backend that simulates a webview in memory, for tests and benchmarks on machines
+ * without a display.
+ *
+ * <p>{@link #webview_run(MemorySegment)} runs an event loop on the calling thread (the UI thread)
+ * that executes dispatched tasks and calls from "JavaScript" made via {@link #call(String,
+ * String)}. Bound functions and dispatch callbacks are invoked through their real upcall stubs,
+ * so everything the library does for a bridge crossing is measured, only the browser is missing.
+ * As with libwebview, the id passed to a bind callback is freed when the callback returns, and is
+ * first overwritten so that a result returned to a retained pointer fails to match its call.
+ * Evaluated scripts are counted and optionally passed to a listener, they are not executed.
+ * Functions that a webview of this library routes through its internal RPC entry are called
+ * through that entry, as their stubs in the page would call them.
+ *
+ * <pre>{@code
+ * var fake = new FakeWebviewNative();
+ * Webview webview = Webview.builder().backend(fake).build();
+ * webview.bind("add", args -> ...);
+ * Thread.ofPlatform().start(webview);
+ *
+ * String result = fake.call("add", "[1,2]").join();
+ * }</pre>
+ *
+ * Each instance backs a single webview.
+ */
+public final class FakeWebviewNative implements WebviewNative {
+
+  private static final System.Logger log = System.getLogger("io.avaje.webview");
+
+  private static final FunctionDescriptor BIND_DESCRIPTOR =
+      FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, JAVA_LONG);
+  private static final FunctionDescriptor DISPATCH_DESCRIPTOR =
+      FunctionDescriptor.ofVoid(ADDRESS, JAVA_LONG);
+
+  private final BlockingQueue<Runnable> loop = new LinkedBlockingQueue<>();
+  private final Map<String, Binding> bindings = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+  private final Map<Long, MethodHandle> handles = new ConcurrentHashMap<>();
+  private final List<String> initScripts = new CopyOnWriteArrayList<>();
+  private final AtomicLong seqs = new AtomicLong();
+  private final LongAdder evalCount = new LongAdder();
+  private volatile @Nullable Consumer<String> evalListener;
+  private volatile @Nullable String html;
+  private volatile @Nullable String url;
+  private volatile @Nullable String title;
+  private volatile boolean terminated;
+  private @Nullable MemorySegment webview;
+
+  /**
+   * Call a bound function as JavaScript would. The call runs on the event loop and the returned
+   * future completes with the JSON result, or exceptionally when the handler fails.
+   *
+   * @param name the name of the bound function
+   * @param jsonArgs the arguments as a JSON array
+   * @return the JSON result of the call
+   */
+  public CompletableFuture<String> call(String name, String jsonArgs) {
+    var future = new CompletableFuture<String>();
+    String seq = Long.toString(seqs.incrementAndGet());
+    pending.put(seq, future);
+    loop.add(
+        () -> {
+          Binding binding = bindings.get(name);
+          String request = jsonArgs;
+          PageStubs stubs = PageStubs.of(this);
+          String stubRequest = stubs == null ? null : stubs.request(name, jsonArgs);
+          if (binding == null && stubRequest != null) {
+            binding = bindings.get(stubs.entry());
+            request = stubRequest;
+          }
+          if (binding == null) {
+            pending.remove(seq);
+            future.completeExceptionally(new IllegalStateException("Not bound: " + name));
+            return;
+          }
+          try (var arena = Arena.ofConfined()) {
+            MemorySegment id = arena.allocateFrom(seq);
+            try {
+              binding.handle().invokeExact(id, arena.allocateFrom(request), binding.arg());
+            } finally {
+              // the id is freed on return, a pointer kept past it no longer reads the id
+              id.fill((byte) 0);
+            }
+          } catch (Throwable e) {
+            pending.remove(seq);
+            future.completeExceptionally(e);
+          }
+        });
+    return future;
+  }
+
+  /** Set a listener that receives each evaluated script. */
+  public void evalListener(@Nullable Consumer<String> evalListener) {
+    this.evalListener = evalListener;
+  }
+
+  /** Return the number of scripts evaluated. */
+  public long evalCount() {
+    return evalCount.sum();
+  }
+
+  /** Return the init scripts in the order they were added. */
+  public List<String> initScripts() {
+    return List.copyOf(initScripts);
+  }
+
+  /** Return the names of the natively bound functions and of the installed stubs. */
+  public Set<String> bindings() {
+    var names = new HashSet<>(bindings.keySet());
+    PageStubs stubs = PageStubs.of(this);
+    if (stubs != null) {
+      names.remove(stubs.entry());
+      names.addAll(stubs.names());
+    }
+    return Set.copyOf(names);
+  }
+
+  /** Return the last HTML set. */
+  public @Nullable String html() {
+    return html;
+  }
+
+  /** Return the last URL navigated to. */
+  public @Nullable String url() {
+    return url;
+  }
+
+  /** Return the window title. */
+  public @Nullable String title() {
+    return title;
+  }
+
+  @Override
+  public synchronized MemorySegment webview_create(boolean debug, MemorySegment window) {
+    if (webview != null) {
+      throw new IllegalStateException("A FakeWebviewNative backs a single webview");
+    }
+    webview = Arena.ofAuto().allocate(1);
+    return webview;
+  }
+
+  @Override
+  public MemorySegment webview_get_window(MemorySegment webview) {
+    return MemorySegment.NULL;
+  }
+
+  @Override
+  public void webview_set_html(MemorySegment webview, String html) {
+    this.html = html;
+  }
+
+  @Override
+  public void webview_set_html(MemorySegment webview, Utf8Text html) {
+    this.html = html.toString();
+  }
+
+  @Override
+  public void webview_navigate(MemorySegment webview, String url) {
+    this.url = url;
+  }
+
+  @Override
+  public void webview_set_title(MemorySegment webview, String title) {
+    this.title = title;
+  }
+
+  @Override
+  public void webview_set_size(MemorySegment webview, int width, int height, int hint) {
+    // no window
+  }
+
+  @Override
+  public void webview_run(MemorySegment webview) {
+    try {
+      while (!terminated) {
+        loop.take().run();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void webview_destroy(MemorySegment webview) {
+    terminated = true;
+    bindings.clear();
+    loop.clear();
+    pending.forEach((_, future) -> future.cancel(false));
+    pending.clear();
+  }
+
+  @Override
+  public void webview_terminate(MemorySegment webview) {
+    terminated = true;
+    // wake the loop
+    loop.add(() -> {});
+  }
+
+  @Override
+  public void webview_eval(MemorySegment webview, String js) {
+    evalCount.increment();
+    var listener = evalListener;
+    if (listener != null) {
+      listener.accept(js);
+    }
+  }
+
+  @Override
+  public void webview_eval(MemorySegment webview, Utf8Text js) {
+    evalCount.increment();
+    var listener = evalListener;
+    if (listener != null) {
+      listener.accept(js.toString());
+    }
+  }
+
+  @Override
+  public void webview_init(MemorySegment webview, String js) {
+    initScripts.add(js);
+  }
+
+  @Override
+  public void webview_bind(
+      MemorySegment webview, MemorySegment name, MemorySegment callback, long arg) {
+    String bindName = name.reinterpret(Long.MAX_VALUE).getString(0);
+    bindings.put(bindName, new Binding(handle(callback, BIND_DESCRIPTOR), arg));
+  }
+
+  @Override
+  public void webview_unbind(MemorySegment webview, MemorySegment name) {
+    bindings.remove(name.reinterpret(Long.MAX_VALUE).getString(0));
+  }
+
+  @Override
+  public void webview_return(MemorySegment webview, String id, boolean isError, String result) {
+    CompletableFuture<String> future = pending.remove(id);
+    if (future == null) {
+      log.log(ERROR, "No pending call for id " + id);
+    } else if (isError) {
+      future.completeExceptionally(new IllegalStateException(result));
+    } else {
+      future.complete(result);
+    }
+  }
+
+  @Override
+  public void webview_return(MemorySegment webview, String id, boolean isError, Utf8Text result) {
+    webview_return(webview, id, isError, result.toString());
+  }
+
+  @Override
+  public void webview_dispatch(MemorySegment webview, MemorySegment callback, long arg) {
+    MethodHandle handle = handle(callback, DISPATCH_DESCRIPTOR);
+    loop.add(
+        () -> {
+          try {
+            handle.invokeExact(webview, arg);
+          } catch (Throwable e) {
+            log.log(ERROR, "Error invoking dispatch callback", e);
+          }
+        });
+  }
+
+  @Override
+  public String webview_version() {
+    return "fake";
+  }
+
+  @Override
+  public boolean hasNativeWindow() {
+    return false;
+  }
+
+  /** A downcall handle that invokes the upcall stub, callbacks are shared stubs so these cache. */
+  private MethodHandle handle(MemorySegment callback, FunctionDescriptor descriptor) {
+    return handles.computeIfAbsent(
+        callback.address(), _ -> Linker.nativeLinker().downcallHandle(callback, descriptor));
+  }
+
+  private record Binding(MethodHandle handle, long arg) {}
+}
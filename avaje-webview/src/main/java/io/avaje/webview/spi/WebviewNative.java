@@ -0,0 +1,218 @@
+package io.avaje.webview.spi;
+
+import module java.base;
+
+import io.avaje.webview.Utf8Text;
+
+/**
+ * The native backend of a webview, mirrors the C API of <a
+ * href="https://github.com/webview/webview">webview</a>.
+ *
+ * <p>The default implementation calls the bundled libwebview via FFM. Other implementations can
+ * be plugged in via {@link io.avaje.webview.Webview.Builder#backend(WebviewNative)}, for example
+ * {@link FakeWebviewNative} which simulates the webview in memory for headless testing and
+ * benchmarking.
+ *
+ * <p>Callbacks passed to {@link #webview_bind} and {@link #webview_dispatch} are native function
+ * pointers (upcall stubs) and implementations call them with the given {@code arg}.
+ *
+ * <ul>
+ *   <li>bind callback: {@code void (*fn)(const char *id, const char *req, void *arg)}, the id and
+ *       request are only valid until the callback returns
+ *   <li>dispatch callback: {@code void (*fn)(webview_t w, void *arg)}
+ * </ul>
+ */
+public interface WebviewNative {
+
+  /**
+   * Creates a new webview instance. If debug is true - developer tools will be enabled (if the
+   * platform supports them). Window parameter can be a pointer to the native window handle. If it's
+   * non-null - then child WebView is embedded into the given parent window. Otherwise a new window
+   * is created. Depending on the platform, a GtkWindow, NSWindow or HWND pointer can be passed
+   * here.
+   *
+   * @param debug Enables developer tools if true (if supported)
+   * @param window A pointer to a native window handle, for embedding the webview in a window.
+   *     (Either a GtkWindow, NSWindow, or HWND pointer)
+   */
+  MemorySegment webview_create(boolean debug, MemorySegment window);
+
+  /**
+   * @return a native window handle pointer.
+   * @param webview The instance pointer of the webview
+   * @implNote This is either a pointer to a GtkWindow, NSWindow, or HWND.
+   */
+  MemorySegment webview_get_window(MemorySegment webview);
+
+  /**
+   * Optional, only supported when {@link #capabilities()} contains {@code
+   * webview_get_native_handle}.
+   *
+   * @return a native handle of the given kind
+   * @param webview The instance pointer of the webview
+   * @param kind 0 for the UI window, 1 for the UI widget, 2 for the browser controller
+   * @throws UnsupportedOperationException when not supported by the backend
+   */
+  default MemorySegment webview_get_native_handle(MemorySegment webview, int kind) {
+    throw new UnsupportedOperationException("webview_get_native_handle is not supported");
+  }
+
+  /**
+   * Load raw HTML content onto the window.
+   *
+   * @param webview The instance pointer of the webview
+   * @param html The raw HTML string.
+   */
+  void webview_set_html(MemorySegment webview, String html);
+
+  /**
+   * Load raw HTML content onto the window.
+   *
+   * @param webview The instance pointer of the webview
+   * @param html The UTF-8 encoded HTML.
+   */
+  void webview_set_html(MemorySegment webview, Utf8Text html);
+
+  /**
+   * Navigates to the given URL.
+   *
+   * @param webview The instance pointer of the webview
+   * @param url The target url, can be a data uri.
+   */
+  void webview_navigate(MemorySegment webview, String url);
+
+  /**
+   * Sets the title of the webview window.
+   *
+   * @param webview The instance pointer of the webview
+   * @param title The window title
+   */
+  void webview_set_title(MemorySegment webview, String title);
+
+  /**
+   * Updates the webview's window size.
+   *
+   * @param webview The instance pointer of the webview
+   * @param width The width
+   * @param height The height
+   * @param hint 0 for none, 1 for the minimum size, 2 for the maximum size, 3 for a fixed size
+   */
+  void webview_set_size(MemorySegment webview, int width, int height, int hint);
+
+  /**
+   * Runs the main loop until it's terminated. You must destroy the webview after this method
+   * returns.
+   *
+   * @param webview The instance pointer of the webview
+   */
+  void webview_run(MemorySegment webview);
+
+  /**
+   * Destroys a webview and closes the native window.
+   *
+   * @param webview The instance pointer of the webview
+   */
+  void webview_destroy(MemorySegment webview);
+
+  /**
+   * Stops the webview loop, which causes {@link #webview_run(MemorySegment)} to return.
+   *
+   * @param webview The instance pointer of the webview
+   */
+  void webview_terminate(MemorySegment webview);
+
+  /**
+   * Evaluates arbitrary JavaScript code asynchronously.
+   *
+   * @param webview The instance pointer of the webview
+   * @param js The script to execute
+   */
+  void webview_eval(MemorySegment webview, String js);
+
+  /**
+   * Evaluates arbitrary JavaScript code asynchronously.
+   *
+   * @param webview The instance pointer of the webview
+   * @param js The UTF-8 encoded script to execute
+   */
+  void webview_eval(MemorySegment webview, Utf8Text js);
+
+  /**
+   * Injects JavaScript code at the initialization of the new page.
+   *
+   * @implSpec It is guaranteed to be called before window.onload.
+   * @param webview The instance pointer of the webview
+   * @param js The script to execute
+   */
+  void webview_init(MemorySegment webview, String js);
+
+  /**
+   * Binds a native callback so that it will appear under the given name as a global JavaScript
+   * function. Internally it uses webview_init().
+   *
+   * @param webview The instance pointer of the webview
+   * @param name The name of the function to be exposed in Javascript (C string)
+   * @param callback The callback to be called
+   * @param arg Passed back to the callback, identifies the binding
+   */
+  void webview_bind(MemorySegment webview, MemorySegment name, MemorySegment callback, long arg);
+
+  /**
+   * Remove the native callback specified.
+   *
+   * @param webview The instance pointer of the webview
+   * @param name The name of the callback (C string)
+   */
+  void webview_unbind(MemorySegment webview, MemorySegment name);
+
+  /**
+   * Allows to return a value from the native binding. The id that the bind callback was passed
+   * must be provided to help internal RPC engine match requests with responses. It is passed as a
+   * copy as the result may be returned after the callback, when the native id is freed.
+   *
+   * @param webview The instance pointer of the webview
+   * @param id The id of the call, as passed to the bind callback
+   * @param isError Whether or not `result` should be thrown as an exception
+   * @param result The result (in json)
+   */
+  void webview_return(MemorySegment webview, String id, boolean isError, String result);
+
+  /**
+   * Allows to return a pre-encoded value from the native binding.
+   *
+   * @param webview The instance pointer of the webview
+   * @param id The id of the call, as passed to the bind callback
+   * @param isError Whether or not `result` should be thrown as an exception
+   * @param result The UTF-8 encoded result (in json)
+   */
+  void webview_return(MemorySegment webview, String id, boolean isError, Utf8Text result);
+
+  /**
+   * Dispatches the callback on the UI thread, only effective while {@link
+   * #webview_run(MemorySegment)} is blocking.
+   *
+   * @param webview The instance pointer of the webview
+   * @param callback The callback to be called
+   * @param arg Passed back to the callback
+   */
+  void webview_dispatch(MemorySegment webview, MemorySegment callback, long arg);
+
+  /** Get the library's version information. */
+  String webview_version();
+
+  /**
+   * Return true if this backend creates a platform window. Platform specific window operations
+   * (appearance, fullscreen, icons, menus) are skipped when false.
+   */
+  default boolean hasNativeWindow() {
+    return true;
+  }
+
+  /**
+   * Return the optional functions this backend supports, such as {@code
+   * webview_get_native_handle}. Functions of the core API are always supported and not included.
+   */
+  default Set<String> capabilities() {
+    return Set.of();
+  }
+}
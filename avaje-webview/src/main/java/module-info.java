@@ -22,7 +22,9 @@
 module io.avaje.webview {
 
   requires transitive org.jspecify;
+  requires jdk.jfr;
 
   exports io.avaje.webview;
+  exports io.avaje.webview.spi;
 
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncBindTest {
+
+  @Test
+  void bindAsync_runsOffTheUiThread() throws Exception {
+    try (var page = new FakePage()) {
+      var release = new CompletableFuture<String>();
+      var handlerThread = new AtomicReference<Thread>();
+      page.webview.bindAsync(
+          "slow",
+          args -> {
+            handlerThread.set(Thread.currentThread());
+            return release.thenApply(value -> "[" + value + "," + args + "]");
+          });
+      page.webview.bind("fast", _ -> "\"fast\"");
+
+      CompletableFuture<String> slow = page.fake.call("slow", "[\"日本\"]");
+      // the UI thread is free while the slow call is pending
+      assertEquals("\"fast\"", page.fake.call("fast", "[]").get(5, TimeUnit.SECONDS));
+      assertFalse(slow.isDone());
+
+      // returned after the upcall, when the native id is no longer valid
+      release.complete("1");
+      assertEquals("[1,[\"\\u65e5\\u672c\"]]", slow.get(5, TimeUnit.SECONDS));
+      assertTrue(handlerThread.get().isVirtual());
+    }
+  }
+
+  @Test
+  void bindAsync_failedFuture_rejects() throws Exception {
+    try (var page = new FakePage(b -> b.bindExecutor(Runnable::run))) {
+      page.webview.bindAsync(
+          "fail", _ -> CompletableFuture.failedFuture(new IllegalStateException("async boom")));
+
+      var failed =
+          assertThrows(
+              ExecutionException.class,
+              () -> page.fake.call("fail", "[]").get(5, TimeUnit.SECONDS));
+      assertTrue(failed.getCause().getMessage().contains("async boom"));
+    }
+  }
+
+  @Test
+  void bindAsync_aborted_interruptsHandler() throws Exception {
+    try (var page = new FakePage()) {
+      var started = new CountDownLatch(1);
+      var interrupted = new CountDownLatch(1);
+      page.webview.bindAsync(
+          "slow",
+          _ -> {
+            started.countDown();
+            try {
+              Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+              interrupted.countDown();
+            }
+            return CompletableFuture.completedFuture("\"late\"");
+          });
+
+      // as sent by the runtime for slow(signal), the call id follows the arguments
+      CompletableFuture<String> slow =
+          page.fake.call(RpcChannel.ENTRY, "[" + page.id("slow") + ",[],7]");
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      page.fake.call(InFlightCalls.CANCEL, "[7]").get(5, TimeUnit.SECONDS);
+
+      var aborted = assertThrows(ExecutionException.class, () -> slow.get(5, TimeUnit.SECONDS));
+      assertEquals("\"aborted\"", aborted.getCause().getMessage());
+      assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+class BatchCallsTest {
+
+  @Test
+  void batch_returnsOneResponse_inCallOrder() throws Exception {
+    try (var page = new FakePage(b -> b.batchCalls(true))) {
+      page.webview.bind("echo", args -> args);
+      page.webview.bindAsync("later", args -> CompletableFuture.supplyAsync(() -> args));
+      page.webview.bind("fail", _ -> { throw new IllegalStateException("boom"); });
+      page.webview.bind("gone", args -> args);
+      page.webview.unbind("gone");
+
+      // as sent by the runtime for echo("a"), later(1, [2]), fail() and gone("]")
+      String batch =
+          "[0,[[%d,[\"a\"]],[%d,[1,[2]]],[%d,[]],[%d,[\"]\"]]]]"
+              .formatted(page.id("echo"), page.id("later"), page.id("fail"), page.id("gone"));
+      // later completes on another thread, after the upcall has returned
+      String result = page.fake.call(RpcChannel.ENTRY, batch).get(5, TimeUnit.SECONDS);
+      assertTrue(
+          page.fake.initScripts().getFirst().contains("window.__avaje__.batch = true;"));
+
+      assertTrue(result.startsWith("[[0,[\"a\"]],[0,[1,[2]]],[1,\""), result);
+      assertTrue(result.contains("boom"));
+      assertTrue(result.contains("No function bound for call " + page.id("gone")));
+    }
+  }
+
+  @Test
+  void batch_split_handlesNestedStrings() {
+    try (var arena = Arena.ofConfined()) {
+      var args = arena.allocateFrom("[[1,[\"[\\\"\"]],[2,[{\"a\":[]}]]]");
+      args = args.asSlice(0, args.byteSize() - 1);
+      List<MemorySegment> calls = RpcChannel.batch(args);
+      assertEquals(2, calls.size());
+      assertEquals(2, RpcChannel.id(calls.get(1)));
+      byte[] second = RpcChannel.args(calls.get(1)).toArray(ValueLayout.JAVA_BYTE);
+      assertEquals("[{\"a\":[]}]", new String(second));
+      assertNull(RpcChannel.batch(args.asSlice(0, 5)));
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import io.avaje.webview.BindOptions.Overflow;
+
+class BindAdmissionTest {
+
+  @Test
+  void maxInFlight_queues_thenRejects() throws Exception {
+    try (var page = new FakePage()) {
+      Webview webview = page.webview;
+      var results = new LinkedBlockingQueue<CompletableFuture<String>>();
+      webview.bindAsync(
+          "slow",
+          BindOptions.interactive().maxInFlight(1).queueDepth(1),
+          _ -> {
+            var result = new CompletableFuture<String>();
+            results.add(result);
+            return result;
+          });
+
+      var first = page.fake.call("slow", "[1]");
+      var second = page.fake.call("slow", "[2]");
+      var third = page.fake.call("slow", "[3]");
+      var rejected = assertThrows(ExecutionException.class, () -> third.get(5, TimeUnit.SECONDS));
+      assertTrue(rejected.getCause().getMessage().contains("slow is full"));
+      // a fixed message, no stack trace is captured for a call turned away
+      assertFalse(rejected.getCause().getMessage().contains("\tat "));
+      assertEquals(1, webview.bindStats("slow").inFlight());
+      assertEquals(1, webview.bindStats("slow").queued());
+
+      results.poll(5, TimeUnit.SECONDS).complete("1");
+      assertEquals("1", first.get(5, TimeUnit.SECONDS));
+      // the queued call starts in its place
+      results.poll(5, TimeUnit.SECONDS).complete("2");
+      assertEquals("2", second.get(5, TimeUnit.SECONDS));
+
+      // the Promise settles before the call is counted as complete
+      BindStats stats = webview.bindStats("slow");
+      for (long deadline = System.nanoTime() + 5_000_000_000L;
+          stats.inFlight() > 0 && System.nanoTime() < deadline; ) {
+        Thread.sleep(1);
+        stats = webview.bindStats("slow");
+      }
+      assertEquals(0, stats.inFlight());
+      assertEquals(2, stats.started());
+      assertEquals(1, stats.rejected());
+      assertTrue(stats.maxQueueTime().compareTo(Duration.ZERO) > 0);
+    }
+  }
+
+  @Test
+  void shedOldest_andBackgroundLane() throws Exception {
+    try (var page = new FakePage(b -> b.backgroundConcurrency(1))) {
+      Webview webview = page.webview;
+      var release = new CompletableFuture<String>();
+      webview.bindAsync("poll", BindOptions.background(), _ -> release);
+      webview.bindAsync(
+          "prefetch",
+          BindOptions.background().maxInFlight(1).queueDepth(1).overflow(Overflow.SHED_OLDEST),
+          args -> CompletableFuture.completedFuture(args));
+      webview.bindAsync("click", _ -> CompletableFuture.completedFuture("\"clicked\""));
+
+      // poll holds the only background slot
+      var poll = page.fake.call("poll", "[]");
+      var first = page.fake.call("prefetch", "[1]");
+      var second = page.fake.call("prefetch", "[2]");
+      var third = page.fake.call("prefetch", "[3]");
+      // interactive calls do not wait for the background lane
+      assertEquals("\"clicked\"", page.fake.call("click", "[]").get(5, TimeUnit.SECONDS));
+      var shed = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+      assertTrue(shed.getCause().getMessage().contains("shed"));
+      assertFalse(first.isDone());
+
+      release.complete("\"polled\"");
+      assertEquals("\"polled\"", poll.get(5, TimeUnit.SECONDS));
+      assertEquals("[1]", first.get(5, TimeUnit.SECONDS));
+      assertEquals("[3]", third.get(5, TimeUnit.SECONDS));
+      assertEquals(1, webview.bindStats("prefetch").shed());
+      assertNull(webview.bindStats("click"));
+    }
+  }
+
+  @Test
+  void bind_syncWithAdmission_throws() throws Exception {
+    try (var page = new FakePage()) {
+      var options = BindOptions.interactive().maxInFlight(1);
+      assertThrows(
+          IllegalArgumentException.class, () -> page.webview.bind("a", options, args -> args));
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+import module jdk.jfr;
+
+import org.junit.jupiter.api.Test;
+
+class BridgeEventsTest {
+
+  @Test
+  void recording_hasBindDispatchAndRunEvents() throws Exception {
+    List<RecordedEvent> events;
+    try (var recording = new Recording()) {
+      recording.enable("io.avaje.webview.BindUpcall").withThreshold(Duration.ZERO);
+      recording.enable("io.avaje.webview.Dispatch").withThreshold(Duration.ZERO);
+      recording.enable("io.avaje.webview.Run");
+      recording.start();
+
+      try (var page = new FakePage()) {
+        page.webview.bind("greet", _ -> "\"hi\"");
+        var called = new CountDownLatch(1);
+        var release = new CompletableFuture<String>();
+        page.webview.bindAsync(
+            "later",
+            _ -> {
+              called.countDown();
+              return release;
+            });
+        page.fake.call("greet", "[1]").get(5, TimeUnit.SECONDS);
+        var later = page.fake.call("later", "[]");
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        release.completeExceptionally(new IllegalStateException("late"));
+        assertThrows(ExecutionException.class, () -> later.get(5, TimeUnit.SECONDS));
+        var done = new CountDownLatch(1);
+        page.webview.dispatch(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+      }
+
+      recording.stop();
+      Path file = Files.createTempFile("webview", ".jfr");
+      recording.dump(file);
+      events = RecordingFile.readAllEvents(file);
+      Files.delete(file);
+    }
+
+    RecordedEvent bind = binding(events, "greet");
+    assertEquals(3, bind.getLong("requestBytes"));
+    assertEquals(4, bind.getLong("resultBytes"));
+    assertFalse(bind.getBoolean("error"));
+    // recorded when the future completes, not when the upcall returns
+    RecordedEvent async = binding(events, "later");
+    assertTrue(async.getDuration().toMillis() >= 20);
+    assertTrue(async.getBoolean("error"));
+    single(events, "io.avaje.webview.Dispatch");
+    single(events, "io.avaje.webview.Run");
+  }
+
+  private static RecordedEvent binding(List<RecordedEvent> events, String binding) {
+    List<RecordedEvent> matching =
+        events.stream()
+            .filter(e -> e.getEventType().getName().equals("io.avaje.webview.BindUpcall"))
+            .filter(e -> binding.equals(e.getString("binding")))
+            .toList();
+    assertEquals(1, matching.size(), binding);
+    return matching.getFirst();
+  }
+
+  private static RecordedEvent single(List<RecordedEvent> events, String name) {
+    List<RecordedEvent> matching =
+        events.stream().filter(e -> e.getEventType().getName().equals(name)).toList();
+    assertEquals(1, matching.size(), name);
+    return matching.getFirst();
+  }
+}
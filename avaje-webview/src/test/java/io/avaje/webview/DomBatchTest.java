@@ -0,0 +1,76 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import io.avaje.webview.DomBatch.Position;
+
+class DomBatchTest {
+
+  @Test
+  void flush_sendsOneScript_andCompletesReads() throws Exception {
+    try (var page = new FakePage()) {
+      DomBatch dom = page.webview.dom();
+      var chart = dom.measure("#chart");
+      dom.setText("#price", "\"101\"")
+          .setAttribute("#row", "aria-busy", null)
+          .toggleClass("#row", "up", true)
+          .insertHtml("#log", Position.BEFORE_END, "<li>x</li>");
+      var scroll = dom.property("#log", "scrollTop");
+      assertEquals(6, dom.size());
+      var applied = dom.flush();
+      assertThrows(IllegalStateException.class, () -> dom.setText("#a", "b"));
+
+      String script = page.awaitScript("__avaje__.dom(");
+      String commands =
+          "[[4,\"#chart\"],[0,\"#price\",\"\\\"101\\\"\"],[1,\"#row\",\"aria-busy\",null],"
+              + "[2,\"#row\",\"up\",true],[3,\"#log\",\"beforeend\",\"<li>x</li>\"],"
+              + "[5,\"#log\",\"scrollTop\"]]";
+      // the commands are passed as data, not as a script to eval
+      assertTrue(script.startsWith("window.__avaje__.dom(" + commands + ").then("), script);
+      assertFalse(script.contains("eval)("), script);
+
+      // the JSON text of each read
+      String rect = "{\"x\":0,\"y\":8,\"width\":320,\"height\":200}";
+      String results = "[\"" + WebviewUtil.jsonEscape(rect) + "\",\"42\"]";
+      page.fake
+          .call(EvalResults.RESULT, "[" + FakePage.evalId(script) + ",true," + results + "]")
+          .get(5, TimeUnit.SECONDS);
+      applied.get(5, TimeUnit.SECONDS);
+      assertEquals(rect, chart.get());
+      assertEquals("42", scroll.get());
+    }
+  }
+
+  @Test
+  void flush_failedInPage_failsReads() throws Exception {
+    try (var page = new FakePage()) {
+      DomBatch dom = page.webview.dom();
+      var read = dom.property("#[bad", "value");
+      var applied = dom.flush();
+      long id = FakePage.evalId(page.awaitScript("__avaje__.dom("));
+      page.fake
+          .call(EvalResults.RESULT, "[" + id + ",false,\"SyntaxError\"]")
+          .get(5, TimeUnit.SECONDS);
+
+      var error = assertThrows(ExecutionException.class, () -> read.get(5, TimeUnit.SECONDS));
+      assertInstanceOf(WebviewEvalException.class, error.getCause());
+      error = assertThrows(ExecutionException.class, () -> applied.get(5, TimeUnit.SECONDS));
+      assertInstanceOf(WebviewEvalException.class, error.getCause());
+      assertTrue(page.webview.dom().flush().isDone());
+    }
+  }
+
+  @Test
+  void strings_splitsTheResults() {
+    assertEquals(
+        List.of("{\"a\":\"[,]\"}", "null", "\"x\""),
+        DomBatch.strings("[\"{\\\"a\\\":\\\"[,]\\\"}\", \"null\",\"\\\"x\\\"\"]"));
+    assertEquals(List.of(), DomBatch.strings("[]"));
+    assertEquals(List.of(), DomBatch.strings("null"));
+    assertEquals(List.of(), DomBatch.strings("[\"open"));
+  }
+}
@@ -0,0 +1,110 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+class EvalBatchTest {
+
+  private static final Pattern RUN = Pattern.compile("run\\(\"((?:[^\"\\\\]|\\\\.)*)\"\\);");
+
+  @Test
+  void evals_coalescedPerTick_inOrder() throws Exception {
+    var page = new FakePage(builder -> builder.coalesceEvals(100, Duration.ofMillis(50)));
+    Webview webview = page.webview;
+
+    for (int i = 0; i < 250; i++) {
+      webview.eval("tick(" + i + ")");
+    }
+    webview.eval(Utf8Text.encode("encoded()"));
+    webview.eval("last(\"x\")");
+
+    var statements = new ArrayList<String>();
+    int evaluations = 0;
+    while (!statements.contains("last(\"x\")")) {
+      String script = page.scripts.poll(5, TimeUnit.SECONDS);
+      assertNotNull(script, "statements evaluated " + statements.size());
+      evaluations++;
+      Matcher run = RUN.matcher(script);
+      int batch = 0;
+      while (run.find()) {
+        statements.add(run.group(1).replace("\\\"", "\""));
+        batch++;
+      }
+      assertTrue(batch <= 100, "batch of " + batch);
+      if (batch == 0) {
+        // the encoded script is evaluated as is
+        statements.add(script);
+      }
+    }
+    assertEquals(252, statements.size());
+    for (int i = 0; i < 250; i++) {
+      assertEquals("tick(" + i + ")", statements.get(i));
+    }
+    assertEquals("encoded()", statements.get(250));
+    assertTrue(evaluations < 10, evaluations + " evaluations");
+
+    page.close();
+  }
+
+  @Test
+  void otherScripts_queueBehindPendingEvals() throws Exception {
+    var page = new FakePage(builder -> builder.coalesceEvals(100, Duration.ofMillis(200)));
+    Webview webview = page.webview;
+
+    webview.eval("x = 1");
+    webview.evalForResult("x");
+    webview.registerScript("show", "v => v");
+    webview.invoke("show", "[1]");
+
+    var order = new ArrayList<String>();
+    while (order.size() < 3) {
+      String script = page.scripts.poll(5, TimeUnit.SECONDS);
+      assertNotNull(script, "evaluated " + order);
+      if (script.contains("run(\"x = 1\")")) {
+        order.add("eval");
+      } else if (script.contains("(0, eval)(\"x\")")) {
+        order.add("evalForResult");
+      } else if (script.startsWith("window.__avaje_invoke__(")) {
+        order.add("invoke");
+      }
+    }
+    assertEquals(List.of("eval", "evalForResult", "invoke"), order);
+
+    page.close();
+  }
+
+  @Test
+  void navigation_evaluatesPendingEvalsFirst() throws Exception {
+    var page = new FakePage(builder -> builder.coalesceEvals(100, Duration.ofSeconds(10)));
+    Webview webview = page.webview;
+
+    webview.eval("x = 1");
+    webview.setHTML("<p>next</p>");
+
+    // navigated by the time setHTML returns, after the pending eval
+    assertEquals("<p>next</p>", page.fake.html());
+    page.awaitScript("run(\"x = 1\")");
+
+    page.close();
+  }
+
+  @Test
+  void evals_runByIndirectEval_soLexicalDeclarationsStayLocal() throws Exception {
+    var page = new FakePage(builder -> builder.coalesceEvals(100, Duration.ZERO));
+    Webview webview = page.webview;
+
+    webview.eval("let count = 1");
+    webview.eval("count++");
+
+    // each script is a string passed to an indirect eval rather than a script of its own, so
+    // count is local to the first eval, as documented on coalesceEvals
+    String script = page.awaitScript("run(\"let count = 1\");");
+    assertTrue(script.contains("(0, eval)(script);"), script);
+    assertFalse(script.contains("\nlet count = 1"), script);
+
+    page.close();
+  }
+}
@@ -0,0 +1,58 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+class EvalForResultTest {
+
+  @Test
+  void evalForResult_completesWithValueOrError() throws Exception {
+    var page = new FakePage();
+    Webview webview = page.webview;
+
+    var title = webview.evalForResult("document.title");
+    var broken = webview.evalForResult("nope()");
+    long titleId = FakePage.evalId(page.awaitScript("(0, eval)(\"document.title\")"));
+    long brokenId = FakePage.evalId(page.awaitScript("(0, eval)(\"nope()\")"));
+    assertNotEquals(titleId, brokenId);
+
+    // the page reports in any order
+    page.fake
+        .call(EvalResults.RESULT, "[" + brokenId + ",false,\"ReferenceError: nope\\n at x\"]")
+        .get(5, TimeUnit.SECONDS);
+    page.fake
+        .call(EvalResults.RESULT, "[" + titleId + ",true,{\"a\":1}]")
+        .get(5, TimeUnit.SECONDS);
+    assertEquals("{\"a\":1}", title.get(5, TimeUnit.SECONDS));
+    var error = assertThrows(ExecutionException.class, () -> broken.get(5, TimeUnit.SECONDS));
+    assertInstanceOf(WebviewEvalException.class, error.getCause());
+    assertEquals("ReferenceError: nope\n at x", error.getCause().getMessage());
+
+    var pending = webview.evalForResult("new Promise(() => {})");
+    page.close();
+    assertThrows(CancellationException.class, () -> pending.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void evalForResult_timesOut() throws Exception {
+    try (var page = new FakePage()) {
+      var result = page.webview.evalForResult("never()", Duration.ofMillis(50));
+      var error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+      assertInstanceOf(TimeoutException.class, error.getCause());
+      // a late result is ignored
+      page.fake.call(EvalResults.RESULT, "[1,true,1]").get(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void script_escapesTheSource() {
+    String script = EvalResults.script(7, "say(\"hi\")\n", false);
+    assertTrue(script.contains("(0, eval)(\"say(\\\"hi\\\")\\n\")"));
+    assertTrue(script.contains("window.__avaje_eval__(7, ok, value)"));
+    // a value that JSON cannot serialize is reported as an error, not lost in the stub
+    assertTrue(script.contains("try { JSON.stringify(value); } catch (e) { report(false"));
+  }
+}
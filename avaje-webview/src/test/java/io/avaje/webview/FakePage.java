@@ -0,0 +1,69 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import io.avaje.webview.internal.PageStubs;
+import io.avaje.webview.spi.FakeWebviewNative;
+
+/** A webview on the fake backend with its loop running, recording the scripts it evaluates. */
+final class FakePage implements AutoCloseable {
+
+  private static final Pattern EVAL_ID = Pattern.compile("__avaje_eval__\\((\\d+),");
+
+  final FakeWebviewNative fake = new FakeWebviewNative();
+  final BlockingQueue<String> scripts = new LinkedBlockingQueue<>();
+  final Webview webview;
+  private final Thread loop;
+
+  FakePage() {
+    this(UnaryOperator.identity());
+  }
+
+  /** Start a webview built with the options. */
+  FakePage(UnaryOperator<Webview.Builder> options) {
+    fake.evalListener(scripts::add);
+    webview = options.apply(Webview.builder().backend(fake).shutdownHook(false)).build();
+    loop = Thread.ofPlatform().start(webview);
+  }
+
+  /** Return the next evaluated script that contains the text, skipping the scripts before it. */
+  String awaitScript(String expected) throws InterruptedException {
+    while (true) {
+      String script = scripts.poll(5, TimeUnit.SECONDS);
+      assertNotNull(script, expected);
+      if (script.contains(expected)) {
+        return script;
+      }
+    }
+  }
+
+  /** Return the method id that the stub of the function passes, once it is installed. */
+  int id(String name) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (System.nanoTime() < deadline) {
+      PageStubs stubs = PageStubs.of(fake);
+      int id = stubs == null ? -1 : stubs.id(name);
+      if (id > 0) {
+        return id;
+      }
+      Thread.sleep(1);
+    }
+    return fail("No stub installed for " + name);
+  }
+
+  /** Return the id that a script of {@link Webview#evalForResult(String)} reports with. */
+  static long evalId(String script) {
+    Matcher matcher = EVAL_ID.matcher(script);
+    assertTrue(matcher.find(), script);
+    return Long.parseLong(matcher.group(1));
+  }
+
+  /** Close the webview and wait for its loop to stop. */
+  @Override
+  public void close() throws InterruptedException {
+    webview.close();
+    loop.join(5_000);
+  }
+}
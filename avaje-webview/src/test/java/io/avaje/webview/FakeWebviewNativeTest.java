@@ -0,0 +1,124 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import io.avaje.webview.spi.FakeWebviewNative;
+
+class FakeWebviewNativeTest {
+
+  @Test
+  void bind_roundTrip() throws Exception {
+    var fake = new FakeWebviewNative();
+    Webview webview = Webview.builder().backend(fake).shutdownHook(false).build();
+    webview.bind("echo", args -> args);
+    webview.bindRaw("size", req -> Utf8Text.encode(Integer.toString(req.length())));
+    webview.bind("fail", _ -> { throw new IllegalStateException("boom"); });
+    Thread loop = Thread.ofPlatform().start(webview);
+
+    assertEquals("[1,2]", fake.call("echo", "[1,2]").get(5, TimeUnit.SECONDS));
+    assertEquals("6", fake.call("size", "[\"日本\"]").get(5, TimeUnit.SECONDS));
+    var failed =
+        assertThrows(
+            ExecutionException.class, () -> fake.call("fail", "[]").get(5, TimeUnit.SECONDS));
+    assertTrue(failed.getCause().getMessage().contains("boom"));
+
+    webview.unbind("echo");
+    // the stub stays installed and rejects
+    assertThrows(ExecutionException.class, () -> fake.call("echo", "[]").get(5, TimeUnit.SECONDS));
+    webview.close();
+    loop.join(5_000);
+    assertFalse(loop.isAlive());
+  }
+
+  @Test
+  void bind_utf8PassesThrough() throws Exception {
+    for (boolean utf8 : new boolean[] {false, true}) {
+      var fake = new FakeWebviewNative();
+      var scripts = new LinkedBlockingQueue<String>();
+      fake.evalListener(scripts::add);
+      Webview webview = Webview.builder().backend(fake).shutdownHook(false).utf8(utf8).build();
+      var received = new CompletableFuture<String>();
+      webview.bind("echo", args -> {
+        received.complete(args);
+        return args;
+      });
+      Thread loop = Thread.ofPlatform().start(webview);
+
+      String args = "[\"日本 😀\"]";
+      String sent = utf8 ? args : "[\"\\u65e5\\u672c \\ud83d\\ude00\"]";
+      assertEquals(sent, fake.call("echo", args).get(5, TimeUnit.SECONDS));
+      assertEquals(sent, received.get(5, TimeUnit.SECONDS));
+      webview.eval("title('日本')");
+      String script;
+      do {
+        script = scripts.poll(5, TimeUnit.SECONDS);
+        assertNotNull(script);
+      } while (!script.contains("title("));
+      assertEquals(utf8, script.contains("\"title('日本')\""), script);
+
+      webview.close();
+      loop.join(5_000);
+    }
+  }
+
+  @Test
+  void dispatch_runsOnLoop_andCoalescesLatest() throws Exception {
+    var fake = new FakeWebviewNative();
+    Webview webview = Webview.builder().backend(fake).shutdownHook(false).build();
+    Thread loop = Thread.ofPlatform().start(webview);
+
+    var count = new AtomicInteger();
+    var latest = new AtomicInteger();
+    var gate = new CountDownLatch(1);
+    var done = new CountDownLatch(1);
+    // hold the loop so that everything below is pending at once
+    webview.dispatch(() -> awaitQuietly(gate));
+    for (int i = 0; i < 100; i++) {
+      webview.dispatch(count::incrementAndGet);
+    }
+    for (int i = 0; i < 100; i++) {
+      webview.dispatchLatest("key", latest::incrementAndGet);
+    }
+    webview.dispatch(done::countDown);
+    gate.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    assertEquals(100, count.get());
+    assertEquals(1, latest.get());
+    webview.close();
+    loop.join(5_000);
+  }
+
+  @Test
+  void dispatch_blockOverflow_failsFastWhenNotRunning() {
+    Webview webview =
+        Webview.builder()
+            .backend(new FakeWebviewNative())
+            .shutdownHook(false)
+            .dispatchCapacity(1)
+            .dispatchOverflow(Webview.DispatchOverflow.BLOCK)
+            .build();
+    webview.dispatch(() -> {});
+    assertThrows(IllegalStateException.class, () -> webview.dispatch(() -> {}));
+    webview.close();
+  }
+
+  @Test
+  void dispatchCapacity_belowOne_rejected() {
+    var builder = Webview.builder();
+    assertThrows(IllegalArgumentException.class, () -> builder.dispatchCapacity(0));
+    assertThrows(IllegalArgumentException.class, () -> builder.dispatchCapacity(-1));
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+class NativeStringsTest {
+
+  @Test
+  void allocate_reusesBuffer() {
+    var strings = new NativeStrings(NativeStrings.INITIAL_CAPACITY);
+    long mark = strings.mark();
+    MemorySegment first = strings.allocate("hello");
+    assertEquals("hello", first.getString(0));
+    strings.release(mark);
+
+    MemorySegment second = strings.allocate("héllo 日本");
+    assertEquals("héllo 日本", second.getString(0));
+    assertEquals(first.address(), second.address());
+    strings.release(mark);
+  }
+
+  @Test
+  void allocate_nested_slicesFurtherAlong() {
+    var strings = new NativeStrings(NativeStrings.INITIAL_CAPACITY);
+    long outer = strings.mark();
+    MemorySegment a = strings.allocate("outer");
+
+    long inner = strings.mark();
+    MemorySegment b = strings.allocate("inner");
+    assertNotEquals(a.address(), b.address());
+    strings.release(inner);
+
+    assertEquals("outer", a.getString(0));
+    strings.release(outer);
+    assertEquals(0, strings.mark());
+  }
+
+  @Test
+  void allocate_grows_thenShrinks() {
+    var strings = new NativeStrings(NativeStrings.INITIAL_CAPACITY);
+    String big = "x".repeat(20_000);
+    strings.release(mark(strings, big));
+    assertTrue(strings.capacity() > NativeStrings.INITIAL_CAPACITY);
+
+    long grown = strings.capacity();
+    for (int i = 0; i < NativeStrings.SHRINK_AFTER; i++) {
+      strings.release(mark(strings, "small"));
+    }
+    assertEquals(grown / 2, strings.capacity());
+  }
+
+  @Test
+  void allocate_overCap_isOneOff() {
+    var strings = new NativeStrings(NativeStrings.INITIAL_CAPACITY);
+    String huge = "x".repeat((int) NativeStrings.MAX_CAPACITY);
+    long mark = strings.mark();
+    MemorySegment segment = strings.allocate(huge);
+    assertEquals(huge.length(), segment.getString(0).length());
+    strings.release(mark);
+    assertEquals(NativeStrings.INITIAL_CAPACITY, strings.capacity());
+  }
+
+  @Test
+  void allocate_largeAscii_usesBuffer() {
+    var strings = new NativeStrings(NativeStrings.INITIAL_CAPACITY);
+    // over a third of the cap, so it only fits when sized by its encoded length
+    String large = "x".repeat((int) (NativeStrings.MAX_CAPACITY / 2));
+    long mark = strings.mark();
+    MemorySegment segment = strings.allocate(large);
+    assertEquals(NativeStrings.MAX_CAPACITY, strings.capacity());
+    assertEquals(large.length() + 1, segment.byteSize());
+    strings.release(mark);
+  }
+
+  @Test
+  void utf8Length_matchesEncoder() {
+    for (String value : List.of("", "hello", "héllo 日本", "😀 a", "\ud800 lone")) {
+      byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+      long length = NativeStrings.utf8Length(value);
+      if (value.contains("\ud800")) {
+        assertTrue(length >= encoded.length);
+      } else {
+        assertEquals(encoded.length, length, value);
+      }
+    }
+  }
+
+  private static long mark(NativeStrings strings, String value) {
+    long mark = strings.mark();
+    strings.allocate(value);
+    return mark;
+  }
+}
@@ -0,0 +1,63 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import io.avaje.webview.spi.FakeWebviewNative;
+
+class ResourceTrackerTest {
+
+  @Test
+  void usage_countsBindings_untilReleased() throws Exception {
+    Webview webview =
+        Webview.builder()
+            .backend(new FakeWebviewNative())
+            .shutdownHook(false)
+            .leakDetection(true)
+            .build();
+    // the dispatch queue
+    assertEquals(new ResourceUsage(1, 0, 1, 0), webview.resourceUsage());
+
+    webview.bind("first", args -> args);
+    webview.bind("second", args -> args);
+    // both go through the one native RPC entry, its name is NUL terminated
+    assertEquals(new ResourceUsage(1, 0, 2, 14), webview.resourceUsage());
+
+    webview.unbind("first");
+    assertEquals(new ResourceUsage(1, 0, 2, 14), webview.resourceUsage());
+
+    Thread loop = Thread.ofPlatform().start(webview);
+    webview.close();
+    loop.join(5_000);
+    assertEquals(new ResourceUsage(0, 0, 0, 0), webview.resourceUsage());
+  }
+
+  @Test
+  void release_isOnce() {
+    var tracker = new ResourceTracker(new Object(), false);
+    long before = ResourceTracker.total().callbacks();
+    tracker.allocated(2);
+    assertEquals(before + 1, ResourceTracker.total().callbacks());
+    tracker.released(2);
+    assertEquals(before, ResourceTracker.total().callbacks());
+
+    tracker.destroyed();
+    long webviews = ResourceTracker.total().webviews();
+    tracker.destroyed();
+    assertEquals(webviews, ResourceTracker.total().webviews());
+  }
+
+  @Test
+  void checkReleased_reportsCallbacksStillHeld() {
+    var tracker = new ResourceTracker(new Object(), true);
+    tracker.allocated(0);
+    tracker.allocated(4);
+    tracker.released(0);
+    assertEquals(1, tracker.checkReleased());
+    tracker.released(4);
+    assertEquals(0, tracker.checkReleased());
+  }
+}
@@ -0,0 +1,118 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+import io.avaje.webview.spi.FakeWebviewNative;
+
+class RpcChannelTest {
+
+  @Test
+  void request_parsesIdAndArgs() {
+    try (var arena = Arena.ofConfined()) {
+      var request = arena.allocateFrom("[12,[1,\"a\"]]");
+      request = request.asSlice(0, request.byteSize() - 1);
+      assertEquals(12, RpcChannel.id(request));
+      byte[] args = RpcChannel.args(request).toArray(ValueLayout.JAVA_BYTE);
+      assertEquals("[1,\"a\"]", new String(args));
+
+      assertEquals(0, RpcChannel.callId(request));
+
+      var abortable = arena.allocateFrom("[3,[[1],2],45]");
+      abortable = abortable.asSlice(0, abortable.byteSize() - 1);
+      assertEquals(3, RpcChannel.id(abortable));
+      assertEquals(45, RpcChannel.callId(abortable));
+      byte[] abortableArgs = RpcChannel.args(abortable).toArray(ValueLayout.JAVA_BYTE);
+      assertEquals("[[1],2]", new String(abortableArgs));
+
+      assertEquals(-1, RpcChannel.id(arena.allocateFrom("[,[]]").asSlice(0, 5)));
+      assertEquals(-1, RpcChannel.id(arena.allocateFrom("[x1,[]]").asSlice(0, 7)));
+    }
+  }
+
+  @Test
+  void installScript_batchesPendingStubs_withStableIds() {
+    var rpc = new RpcChannel(false);
+    RpcChannel.Handler handler = (_, _) -> {};
+    assertTrue(rpc.register("a", handler, false, BindOptions.interactive()));
+    assertTrue(rpc.register("b", handler, false, BindOptions.interactive()));
+    String first = rpc.installScript();
+    assertTrue(first.startsWith(RpcChannel.RUNTIME));
+    assertTrue(first.contains("window[\"a\"] = a.stub(1);"));
+    assertTrue(first.contains("window[\"b\"] = a.stub(2);"));
+    assertNull(rpc.installScript());
+
+    assertTrue(rpc.unregister("a"));
+    assertNull(rpc.method(1));
+    // binding the name again reuses the installed stub
+    assertFalse(rpc.register("a", handler, false, BindOptions.interactive()));
+    assertEquals("a", rpc.method(1).name());
+    assertNull(rpc.installScript());
+
+    assertTrue(rpc.register("c", handler, false, BindOptions.interactive()));
+    String next = rpc.installScript();
+    assertFalse(next.contains("__avaje__ ="));
+    assertTrue(next.contains("window[\"c\"] = a.stub(3);"));
+  }
+
+  @Test
+  void options_arePartOfTheStub() {
+    var rpc = new RpcChannel(false);
+    RpcChannel.Handler handler = (_, _) -> {};
+    var throttled = BindOptions.interactive().rate(RatePolicy.perSecond(10));
+    assertTrue(rpc.register("scroll", handler, false, throttled));
+    String stub = "window[\"scroll\"] = a.stub(1, {\"rate\":{\"mode\":\"throttle\",\"ms\":100}});";
+    assertTrue(rpc.installScript().contains(stub));
+
+    // the same policy keeps the installed stub
+    var same = BindOptions.interactive().rate(RatePolicy.throttle(Duration.ofMillis(100)));
+    assertFalse(rpc.register("scroll", handler, false, same));
+    var cached = same.cache(Duration.ofSeconds(5));
+    assertTrue(rpc.register("scroll", handler, false, cached));
+    assertTrue(rpc.installScript().contains("\"ms\":100},\"ttl\":5000})"));
+  }
+
+  @Test
+  void bind_whileRunning_installsStubs() throws Exception {
+    var fake = new FakeWebviewNative();
+    Webview webview = Webview.builder().backend(fake).shutdownHook(false).build();
+    webview.bind("before", _ -> "1");
+    Thread loop = Thread.ofPlatform().start(webview);
+    assertEquals("1", fake.call("before", "[]").get(5, TimeUnit.SECONDS));
+
+    webview.bind("after", _ -> "2");
+    assertEquals("2", fake.call("after", "[]").get(5, TimeUnit.SECONDS));
+    assertEquals(2, fake.initScripts().size());
+    assertEquals(Set.of("before", "after"), fake.bindings());
+
+    webview.close();
+    loop.join(5_000);
+  }
+
+  @Test
+  void invalidate_evaluatesInThePage() throws Exception {
+    var fake = new FakeWebviewNative();
+    var evals = new LinkedBlockingQueue<String>();
+    fake.evalListener(evals::add);
+    Webview webview = Webview.builder().backend(fake).shutdownHook(false).build();
+    webview.bind("lookup", BindOptions.interactive().cache(Duration.ofMinutes(1)), args -> args);
+    Thread loop = Thread.ofPlatform().start(webview);
+    // the stubs
+    assertNotNull(evals.poll(5, TimeUnit.SECONDS));
+
+    webview.invalidate("lookup", "[ 1 ]");
+    webview.invalidate("lookup", "[1]);alert(1);(");
+    webview.invalidate("lookup");
+    webview.invalidate("unknown");
+    String prefix = "window.__avaje__ && window.__avaje__.invalidate(1";
+    assertEquals(prefix + ", \"[ 1 ]\");", evals.poll(5, TimeUnit.SECONDS));
+    assertEquals(prefix + ", \"[1]);alert(1);(\");", evals.poll(5, TimeUnit.SECONDS));
+    assertEquals(prefix + ");", evals.poll(5, TimeUnit.SECONDS));
+    webview.close();
+    loop.join(5_000);
+    assertNull(evals.poll());
+  }
+}
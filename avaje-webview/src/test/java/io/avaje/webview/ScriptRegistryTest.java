@@ -0,0 +1,62 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+class ScriptRegistryTest {
+
+  private static final String RENDER = "function (rows) { table.render(rows); }";
+
+  @Test
+  void invoke_sendsIdAndArgsOnly() throws Exception {
+    try (var page = new FakePage()) {
+      Webview webview = page.webview;
+      webview.registerScript("render", RENDER);
+      webview.registerScript("clear", "() => table.clear()");
+      webview.invoke("render", "[[\"日\"]]");
+      webview.invoke("clear", "[]");
+
+      // the runner once, then the name and the function of each script
+      page.awaitScript("window.__avaje_invoke__ = ");
+      assertEquals(
+          "window.__avaje_scripts__[1] = { name: \"render\" };",
+          page.awaitScript("__avaje_scripts__[1] = "));
+      String define = page.awaitScript(RENDER);
+      assertTrue(define.startsWith("try {\nwindow.__avaje_scripts__[1].fn = (" + RENDER));
+      assertTrue(define.contains("whilst registering script:', \"render\", e);"));
+      assertTrue(page.fake.initScripts().contains(define));
+      assertEquals(
+          "window.__avaje_invoke__(1,[[\"\\u65e5\"]]);", page.awaitScript("__avaje_invoke__(1"));
+      assertEquals("window.__avaje_invoke__(2,[]);", page.awaitScript("__avaje_invoke__(2"));
+
+      // registering again replaces the function of the same id
+      webview.registerScript("render", "rows => {}");
+      assertTrue(page.awaitScript("rows => {}").contains("window.__avaje_scripts__[1].fn = "));
+      int installed = page.fake.initScripts().size();
+      // the same source again installs nothing
+      webview.registerScript("render", "rows => {}");
+      webview.invoke("render", "[]");
+      page.awaitScript("__avaje_invoke__(1,[]");
+      assertEquals(installed, page.fake.initScripts().size());
+      assertThrows(IllegalArgumentException.class, () -> webview.invoke("missing", "[]"));
+    }
+  }
+
+  @Test
+  void invoke_keepsOrderWithCoalescedEvals() throws Exception {
+    try (var page = new FakePage(builder -> builder.coalesceEvals(10, Duration.ZERO))) {
+      Webview webview = page.webview;
+      webview.registerScript("render", RENDER);
+      webview.eval("before()");
+      webview.invoke("render", "[1]");
+      webview.eval("after()");
+
+      page.awaitScript("before()");
+      assertEquals("window.__avaje_invoke__(1,[1]);", page.awaitScript("__avaje_invoke__"));
+      page.awaitScript("after()");
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+class StreamBindTest {
+
+  @Test
+  void stream_pushesItems_withinCredits() throws Exception {
+    try (var page = new FakePage()) {
+      var source = new Source();
+      page.webview.bindStream("rows", _ -> source);
+
+      assertEquals("1", page.fake.call("rows", "[]").get(5, TimeUnit.SECONDS));
+      String stub = "window[\"rows\"] = a.stream(1);";
+      assertTrue(page.fake.initScripts().stream().anyMatch(s -> s.contains(stub)));
+      var subscriber = source.subscriber.get(5, TimeUnit.SECONDS);
+      assertEquals(BindStreams.WINDOW, source.requested.get());
+      for (int i = 1; i <= BindStreams.WINDOW; i++) {
+        subscriber.onNext("\"r" + i + "\"");
+      }
+      page.awaitScript("\"r16\"]");
+      // no more items are requested until the page returns credits
+      assertEquals(BindStreams.WINDOW, source.requested.get());
+
+      page.fake.call(BindStreams.CONTROL, "[1,8]").get(5, TimeUnit.SECONDS);
+      assertEquals(BindStreams.WINDOW + 8, source.requested.get());
+      for (int i = 17; i <= 20; i++) {
+        subscriber.onNext("\"r" + i + "\"");
+      }
+      subscriber.onComplete();
+      // completion is pushed with the last items or on the next tick
+      String last = page.awaitScript("\"r20\"]");
+      if (!last.endsWith("],true);")) {
+        page.awaitScript("],true);");
+      }
+    }
+  }
+
+  @Test
+  void stream_cancelledByPage() throws Exception {
+    try (var page = new FakePage()) {
+      var source = new Source();
+      page.webview.bindStream("rows", _ -> source);
+
+      String id = page.fake.call("rows", "[]").get(5, TimeUnit.SECONDS);
+      page.fake.call(BindStreams.CONTROL, "[" + id + ",0]").get(5, TimeUnit.SECONDS);
+      assertTrue(source.cancelled.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  void stream_cancelledWhenPageReloads() throws Exception {
+    try (var page = new FakePage()) {
+      var source = new Source();
+      page.webview.bindStream("rows", _ -> source);
+
+      page.fake.call("rows", "[]").get(5, TimeUnit.SECONDS);
+      // the new page's first stream reports the reload
+      page.fake.call(BindStreams.CONTROL, "[0,0]").get(5, TimeUnit.SECONDS);
+      assertTrue(source.cancelled.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  /** A publisher driven by the test, recording the credits requested by its subscriber. */
+  private static final class Source implements Flow.Publisher<String>, Flow.Subscription {
+
+    final CompletableFuture<Flow.Subscriber<? super String>> subscriber =
+        new CompletableFuture<>();
+    final AtomicLong requested = new AtomicLong();
+    final CountDownLatch cancelled = new CountDownLatch(1);
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+      subscriber.onSubscribe(this);
+      this.subscriber.complete(subscriber);
+    }
+
+    @Override
+    public void request(long n) {
+      requested.addAndGet(n);
+    }
+
+    @Override
+    public void cancel() {
+      cancelled.countDown();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+class TopicsTest {
+
+  @Test
+  void publish_conflatedPerTopic_forSubscribedTopicsOnly() throws Exception {
+    try (var page = new FakePage()) {
+      Webview webview = page.webview;
+      var fake = page.fake;
+
+      // the first publish installs the subscription function and asks the page to report
+      webview.publish("ticker", "1");
+      webview.publish("other", "0");
+      assertEquals(Topics.SYNC, page.awaitScript(Topics.SYNC));
+      fake.call(Topics.CONTROL, "[null,false]").get(5, TimeUnit.SECONDS);
+      fake.call(Topics.CONTROL, "[\"ticker\",true]").get(5, TimeUnit.SECONDS);
+      fake.call(Topics.CONTROL, "[\"news\",true]").get(5, TimeUnit.SECONDS);
+      fake.call(Topics.CONTROL, "[\"news\",false]").get(5, TimeUnit.SECONDS);
+      fake.call(Topics.CONTROL, "[null,true]").get(5, TimeUnit.SECONDS);
+      // the value published before the page reported, not that of the unsubscribed topic
+      assertEquals("window.__avaje__.deliver({\"ticker\":1});", page.awaitScript("deliver("));
+
+      // hold the UI thread so that the values pile up
+      var release = new CountDownLatch(1);
+      webview.dispatch(() -> awaitQuietly(release));
+      webview.publish("ticker", "2");
+      webview.publish("ticker", "{\"price\":3}");
+      var serialized = new AtomicBoolean();
+      webview.publish("news", () -> {
+        serialized.set(true);
+        return "\"extra\"";
+      });
+      release.countDown();
+
+      String delivered = page.awaitScript("deliver(");
+      assertEquals("window.__avaje__.deliver({\"ticker\":{\"price\":3}});", delivered);
+      assertFalse(serialized.get());
+
+      fake.call(Topics.CONTROL, "[\"ticker\",false]").get(5, TimeUnit.SECONDS);
+      webview.publish("ticker", "4");
+      webview.eval("done()");
+      assertTrue(page.awaitScript("done()").contains("done()"));
+      assertFalse(page.scripts.stream().anyMatch(s -> s.contains("deliver(")));
+    }
+  }
+
+  @Test
+  void publish_once_reachesPageThatSubscribedFirst() throws Exception {
+    try (var page = new FakePage()) {
+      // published once, before the page has reported that it subscribed
+      page.webview.publish("state", "{\"ready\":true}");
+      assertEquals(Topics.SYNC, page.awaitScript(Topics.SYNC));
+      page.fake.call(Topics.CONTROL, "[null,false]").get(5, TimeUnit.SECONDS);
+      page.fake.call(Topics.CONTROL, "[\"state\",true]").get(5, TimeUnit.SECONDS);
+      assertEquals(
+          "window.__avaje__.deliver({\"state\":{\"ready\":true}});", page.awaitScript("deliver("));
+      page.fake.call(Topics.CONTROL, "[null,true]").get(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void run_doesNotBindTheSubscriptionFunction() throws Exception {
+    try (var page = new FakePage()) {
+      page.webview.bind("ping", _ -> "1");
+      assertEquals("1", page.fake.call("ping", "[]").get(5, TimeUnit.SECONDS));
+      assertEquals(Set.of("ping"), page.fake.bindings());
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package io.avaje.webview;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import module java.base;
+
+import org.junit.jupiter.api.Test;
+
+class WebviewUtilTest {
+
+  @Test
+  void nothingToEscape_returnsInput() {
+    String ascii = "{\"a\":[1,2,3],'b':'c'}";
+    assertSame(ascii, WebviewUtil.forceSafeChars(ascii));
+    String plain = "document.title = 'x';";
+    assertSame(plain, WebviewUtil.jsonEscape(plain));
+    assertSame("", WebviewUtil.jsonEscape(""));
+  }
+
+  @Test
+  void escapes() {
+    assertEquals(
+        "a\\\"b\\\\c\\n\\t\\r\\b\\f\\u0000", WebviewUtil.jsonEscape("a\"b\\c\n\t\r\b\f\0"));
+    assertEquals("\\u65e5\\u672c \\ud83d\\ude00!", WebviewUtil.jsonEscape("日本 😀!"));
+    assertEquals("\"\\u65e5\"\n\\u0000", WebviewUtil.forceSafeChars("\"日\"\n\0"));
+    var output = new StringBuilder("x=\"");
+    WebviewUtil.jsonEscape("é", output).append('"');
+    assertEquals("x=\"\\u00e9\"", output.toString());
+    var safe = WebviewUtil.forceSafeChars("[\uffff]", new StringBuilder());
+    assertEquals("[\\uffff]", safe.toString());
+  }
+
+  @Test
+  void utf8_keepsNonAsciiExceptSeparatorsAndLoneSurrogates() {
+    String text = "[\"日本 😀\"]";
+    assertSame(text, WebviewUtil.forceSafeChars(text, true));
+    assertEquals("\\\"日本\\n😀\\\"", WebviewUtil.jsonEscape("\"日本\n😀\"", true));
+    assertEquals("a\\u2028b\\u2029\\u0000", WebviewUtil.forceSafeChars("a\u2028b\u2029\0", true));
+    assertEquals("\\ud83d!\\ude00", WebviewUtil.forceSafeChars("\ud83d!\ude00", true));
+    assertEquals("😀\\ud83d", WebviewUtil.jsonEscape("😀\ud83d", true));
+  }
+
+  @Test
+  void matchesCharByCharEscaping() {
+    var random = new Random(42);
+    char[] sample = {
+      'a', ' ', '"', '\\', '\n', '\t', '\r', '\b', '\f', 0, 1, 'é', '日', '\ud83d'
+    };
+    for (int n = 0; n < 1_000; n++) {
+      var input = new StringBuilder();
+      for (int i = random.nextInt(40); i > 0; i--) {
+        input.append(sample[random.nextInt(sample.length)]);
+      }
+      String s = input.toString();
+      assertEquals(reference(s, true), WebviewUtil.jsonEscape(s));
+      assertEquals(reference(s, false), WebviewUtil.forceSafeChars(s));
+    }
+  }
+
+  /** The escaping as it was, one char at a time. */
+  private static String reference(String input, boolean json) {
+    var output = new StringBuilder();
+    for (char ch : input.toCharArray()) {
+      String named =
+          !json
+              ? null
+              : switch (ch) {
+                case '\n' -> "\\n";
+                case '\t' -> "\\t";
+                case '\r' -> "\\r";
+                case '\\' -> "\\\\";
+                case '"' -> "\\\"";
+                case '\b' -> "\\b";
+                case '\f' -> "\\f";
+                default -> null;
+              };
+      if (named != null) {
+        output.append(named);
+      } else if (ch == 0 || ch > 127) {
+        output.append("\\u").append(String.format("%04x", (int) ch));
+      } else {
+        output.append(ch);
+      }
+    }
+    return output.toString();
+  }
+}
@@ -8,6 +8,7 @@ import java.util.List;
 import io.avaje.jex.Jex;
 import io.avaje.jex.http.Context;
 import io.avaje.jex.staticcontent.StaticContent;
+import io.avaje.webview.Utf8Text;
 import io.avaje.webview.Webview;
 
 public class Main {
@@ -63,33 +64,33 @@ public class Main {
             .build()) {
 
       // Bind function to start the timer
-      webview.bind(
+      webview.bindEncoded(
           "__timerStart__",
           _ -> {
             System.out.println("Timer started " + Thread.currentThread());
             timerActive = true;
             startTime = LocalDateTime.now();
-            return "\"ok\"";
+            return Utf8Text.OK;
           });
 
       // Bind function to notify backend when timer completes
-      webview.bind(
+      webview.bindEncoded(
           "__timerComplete__",
           _ -> {
             System.out.println("Timer completed " + Thread.currentThread());
             timerActive = false;
             completedTasks++;
-            return "\"ok\"";
+            return Utf8Text.OK;
           });
 
       // Bind function to cancel/stop the timer
-      webview.bind(
+      webview.bindEncoded(
           "__timerCancel__",
           _ -> {
             System.out.println("Timer cancelled " + Thread.currentThread());
             timerActive = false;
             startTime = null;
-            return "\"ok\"";
+            return Utf8Text.OK;
           });
 
       // Bind function to get completed sessions count